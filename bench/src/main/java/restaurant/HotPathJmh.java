@@ -0,0 +1,202 @@
+package restaurant;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This file is the JMH version of HotPathBenchmark: the same hot paths (findDish,
+ * findStockNode by ID and by name, checkDishAvailability, order served directly, through a
+ * substitute and with EngineMetrics attached, addTransactionNode, profit(),
+ * updatePriceAndProfit and the menu/stock/tables loaders) on the same inputs, generated from
+ * HotPathBenchmark's fixed seed. JMH takes care of forking, warm-up, dead-code elimination
+ * and the error bars, so these are the numbers to compare changes with.
+ *
+ * dishes, table (stock hashtable size) and ledger (transactions already recorded) are JMH
+ * parameters; pass lists with -p, e.g. -p dishes=100,1000,10000. The ledger is rebuilt
+ * before every iteration, so orders and appends always start from ledger transactions.
+ * Compare order and orderWithMetrics for the cost of collecting metrics; ledger heap per
+ * transaction is only measured by HotPathBenchmark (or here with -prof gc).
+ *
+ * Execution (from bench/): mvn -B package && java -jar target/benchmarks.jar HotPathJmh
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HotPathJmh {
+
+    /*
+     * A restaurant loaded from generated menu, stock and tables files
+     */
+    @State(Scope.Benchmark)
+    public static class Kitchen {
+        @Param({"1000"})
+        public int dishes;
+
+        @Param({"101"})
+        public int table;
+
+        @Param({"100000"})
+        public int ledger;
+
+        Path dir;
+        Path menuFile;
+        Path stockFile;
+        Path tablesFile;
+        RUHungry restaurant;
+        String[] dishNames;
+        String[] unavailable;    // dishes ordered through a substitute
+        String[] ingredientNames;
+        int ingredients;
+        Random random;
+        TransactionData data;
+
+        @Setup(Level.Trial)
+        public void load() throws IOException {
+            dir = Files.createTempDirectory("ruhungry-jmh");
+            menuFile = dir.resolve("menu.in");
+            stockFile = dir.resolve("stock.in");
+            tablesFile = dir.resolve("tables.in");
+            HotPathBenchmark.writeInputs(dishes, table, menuFile, stockFile, tablesFile);
+
+            restaurant = HotPathBenchmark.load(menuFile, stockFile, 0);
+            dishNames = HotPathBenchmark.dishNames(restaurant, false);
+            unavailable = HotPathBenchmark.dishNames(restaurant, true);
+            if (unavailable.length == 0) {
+                unavailable = dishNames;
+            }
+            ingredients = HotPathBenchmark.ingredientCount(dishes);
+            ingredientNames = new String[ingredients];
+            for (int i = 0; i < ingredients; i++) {
+                ingredientNames[i] = HotPathBenchmark.ingredientName(i);
+            }
+            random = new Random(HotPathBenchmark.SEED);
+            data = new TransactionData("order", dishNames[0], 1, 2.5, true);
+        }
+
+        @Setup(Level.Iteration)
+        public void resetLedger() {
+            HotPathBenchmark.resetLedger(restaurant, ledger);
+            restaurant.setMetrics(null);
+        }
+
+        @TearDown(Level.Trial)
+        public void deleteInputs() throws IOException {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+
+        String anyDish() { return dishNames[random.nextInt(dishNames.length)]; }
+    }
+
+    /*
+     * The same restaurant with EngineMetrics attached (after Kitchen's iteration setup)
+     */
+    @State(Scope.Benchmark)
+    public static class MeteredKitchen extends Kitchen {
+        EngineMetrics metrics;
+
+        @Setup(Level.Iteration)
+        public void attachMetrics() {
+            if (metrics == null) {
+                metrics = new EngineMetrics();
+            }
+            restaurant.setMetrics(metrics);
+        }
+    }
+
+    @Benchmark
+    public MenuNode findDish(Kitchen k) {
+        return k.restaurant.findDish(k.anyDish());
+    }
+
+    @Benchmark
+    public StockNode findStockNodeById(Kitchen k) {
+        return k.restaurant.findStockNode(HotPathBenchmark.FIRST_INGREDIENT_ID + k.random.nextInt(k.ingredients));
+    }
+
+    @Benchmark
+    public StockNode findStockNodeByName(Kitchen k) {
+        return k.restaurant.findStockNode(k.ingredientNames[k.random.nextInt(k.ingredients)]);
+    }
+
+    @Benchmark
+    public boolean checkDishAvailability(Kitchen k) {
+        return k.restaurant.checkDishAvailability(k.anyDish(), 1);
+    }
+
+    @Benchmark
+    public TransactionData order(Kitchen k) {
+        return k.restaurant.order(k.anyDish(), 1);
+    }
+
+    @Benchmark
+    public TransactionData orderWithMetrics(MeteredKitchen k) {
+        return k.restaurant.order(k.anyDish(), 1);
+    }
+
+    @Benchmark
+    public TransactionData orderSubstitute(Kitchen k) {
+        return k.restaurant.order(k.unavailable[k.random.nextInt(k.unavailable.length)], 1);
+    }
+
+    @Benchmark
+    public void addTransactionNode(Kitchen k) {
+        k.restaurant.addTransactionNode(k.data);
+    }
+
+    @Benchmark
+    public double profit(Kitchen k) {
+        return k.restaurant.profit();
+    }
+
+    @Benchmark
+    public void updatePriceAndProfit(Kitchen k) {
+        k.restaurant.updatePriceAndProfit();
+    }
+
+    @Benchmark
+    public RUHungry menuFile(Kitchen k) {
+        RUHungry fresh = new RUHungry();
+        fresh.menu(k.menuFile.toString());
+        return fresh;
+    }
+
+    @Benchmark
+    public RUHungry createStockHashTable(Kitchen k) {
+        RUHungry fresh = new RUHungry();
+        fresh.createStockHashTable(k.stockFile.toString());
+        return fresh;
+    }
+
+    @Benchmark
+    public RUHungry createTables(Kitchen k) {
+        RUHungry fresh = new RUHungry();
+        fresh.createTables(k.tablesFile.toString());
+        return fresh;
+    }
+}
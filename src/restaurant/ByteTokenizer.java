@@ -0,0 +1,494 @@
+package restaurant;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * This file reads the same tokens, characters and lines as StdIn's Scanner, straight from the
+ * UTF-8 bytes of a ByteBuffer (a memory-mapped file when the file is large) instead of
+ * through regular expressions.
+ *
+ * readInt(), readLong() and readDouble() parse digits in place and allocate nothing;
+ * readLine() and readString() only allocate the String they return. Tokens are separated by
+ * whitespace as Character.isWhitespace() defines it, and lines end at \n, \r\n, \r, U+0085,
+ * U+2028 or U+2029, exactly like Scanner. Numbers are read in the plain Locale.US form
+ * (optional sign, digits, optional fraction and exponent); Scanner's locale extras such as
+ * "1,000" thousands separators are not accepted.
+ *
+ * As with Scanner, a token that fails to parse is not consumed.
+ *
+ * Each ByteTokenizer has its own position, so unlike StdIn several files can be read at
+ * once, each on its own thread; a single ByteTokenizer must not be shared between threads.
+ */
+
+public class ByteTokenizer {
+
+    // Powers of ten that are exact as doubles, for the fast path of readDouble()
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+    private char pendingLowSurrogate; // second half of a character outside the BMP, 0 if none
+
+    public ByteTokenizer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = buffer.position();
+        this.limit = buffer.limit();
+    }
+
+    // Files smaller than this are read into a heap buffer, since mapping costs more than copying them
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    // Maps the whole file read-only, or reads it into memory if it is small
+    public static ByteTokenizer open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                return new ByteTokenizer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // keep reading until the whole file is in
+            }
+            bytes.flip();
+            return new ByteTokenizer(bytes);
+        }
+    }
+
+    // Same as open(), for callers that cannot throw IOException
+    public static ByteTokenizer openFile(String filename) {
+        try {
+            return open(Paths.get(filename));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open " + filename, e);
+        }
+    }
+
+    // Reads the rest of the stream into memory, for input that is not a file (e.g. System.in)
+    public static ByteTokenizer read(InputStream in) throws IOException {
+        return new ByteTokenizer(ByteBuffer.wrap(in.readAllBytes()));
+    }
+
+    /*
+     * Whitespace and tokens
+     */
+
+    // True if nothing but whitespace is left
+    public boolean isEmpty() {
+        return tokenStart() == limit;
+    }
+
+    public boolean hasNextLine() {
+        return pendingLowSurrogate != 0 || position < limit;
+    }
+
+    public boolean hasNextChar() {
+        return hasNextLine();
+    }
+
+    // Index of the first byte after position that is not whitespace, limit if there is none
+    private int tokenStart() {
+        int i = position;
+        while (i < limit) {
+            int b = buffer.get(i);
+            if (b >= 0) {
+                if (!isAsciiWhitespace(b)) {
+                    return i;
+                }
+                i++;
+            } else {
+                int codePoint = decode(i);
+                if (!Character.isWhitespace(codePoint)) {
+                    return i;
+                }
+                i += encodedLength(i);
+            }
+        }
+        return limit;
+    }
+
+    // Index just past the token that starts at start
+    private int tokenEnd(int start) {
+        int i = start;
+        while (i < limit) {
+            int b = buffer.get(i);
+            if (b >= 0) {
+                if (isAsciiWhitespace(b)) {
+                    return i;
+                }
+                i++;
+            } else {
+                if (Character.isWhitespace(decode(i))) {
+                    return i;
+                }
+                i += encodedLength(i);
+            }
+        }
+        return limit;
+    }
+
+    // Same ASCII characters as Character.isWhitespace()
+    private static boolean isAsciiWhitespace(int b) {
+        return b == ' ' || (b >= '\t' && b <= '\r') || (b >= 0x1C && b <= 0x1F);
+    }
+
+    public String readString() {
+        int start = tokenStart();
+        if (start == limit) {
+            throw new NoSuchElementException();
+        }
+        int end = tokenEnd(start);
+        position = end;
+        pendingLowSurrogate = 0;
+        return string(start, end);
+    }
+
+    /*
+     * Numbers
+     */
+
+    public int readInt() {
+        int start = tokenStart();
+        int end = tokenEnd(start);
+        long value = parseLong(start, end);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new InputMismatchException(string(start, end));
+        }
+        position = end;
+        return (int) value;
+    }
+
+    public long readLong() {
+        int start = tokenStart();
+        int end = tokenEnd(start);
+        long value = parseLong(start, end);
+        position = end;
+        return value;
+    }
+
+    public short readShort() {
+        int start = tokenStart();
+        int end = tokenEnd(start);
+        long value = parseLong(start, end);
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            throw new InputMismatchException(string(start, end));
+        }
+        position = end;
+        return (short) value;
+    }
+
+    public byte readByte() {
+        int start = tokenStart();
+        int end = tokenEnd(start);
+        long value = parseLong(start, end);
+        if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+            throw new InputMismatchException(string(start, end));
+        }
+        position = end;
+        return (byte) value;
+    }
+
+    // Parses bytes start..end as a decimal integer without moving position
+    private long parseLong(int start, int end) {
+        if (start == limit) {
+            throw new NoSuchElementException();
+        }
+        int i = start;
+        boolean negative = false;
+        int sign = buffer.get(i);
+        if (sign == '-' || sign == '+') {
+            negative = sign == '-';
+            i++;
+        }
+        if (i == end) {
+            throw new InputMismatchException(string(start, end));
+        }
+        // Accumulate negatively so Long.MIN_VALUE fits
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw new InputMismatchException(string(start, end));
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw new InputMismatchException(string(start, end));
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    public float readFloat() {
+        int start = tokenStart();
+        int end = tokenEnd(start);
+        checkDecimal(start, end);
+        float value = Float.parseFloat(string(start, end));
+        position = end;
+        return value;
+    }
+
+    /*
+     * Reads a double. Numbers with at most 15 significant digits and a small exponent, which
+     * covers prices like 1.25, are computed exactly from a long and a power of ten; anything
+     * else is handed to Double.parseDouble() so the result is always correctly rounded.
+     */
+    public double readDouble() {
+        int start = tokenStart();
+        int end = tokenEnd(start);
+        checkDecimal(start, end);
+
+        int i = start;
+        boolean negative = false;
+        int sign = buffer.get(i);
+        if (sign == '-' || sign == '+') {
+            negative = sign == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;    // significant digits in mantissa
+        int exponent = 0;  // power of ten to apply to mantissa
+        boolean fraction = false;
+        for (; i < end; i++) {
+            int b = buffer.get(i);
+            if (b == '.') {
+                fraction = true;
+            } else if (b >= '0' && b <= '9') {
+                if (digits > 0 || b != '0') {
+                    if (digits == 15) {
+                        return slowDouble(start, end);
+                    }
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction) {
+                    exponent--;
+                }
+            } else {
+                break; // exponent, or NaN/Infinity
+            }
+        }
+        if (i < end) {
+            int b = buffer.get(i);
+            if (b != 'e' && b != 'E') {
+                return slowDouble(start, end);
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            int written = 0;
+            for (; i < end; i++) {
+                written = written * 10 + (buffer.get(i) - '0');
+                if (written > 1000) {
+                    return slowDouble(start, end);
+                }
+            }
+            exponent += negativeExponent ? -written : written;
+        }
+
+        double value;
+        if (exponent == 0) {
+            value = mantissa;
+        } else if (exponent > 0 && exponent < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return slowDouble(start, end);
+        }
+        position = end;
+        return negative ? -value : value;
+    }
+
+    private double slowDouble(int start, int end) {
+        double value = Double.parseDouble(string(start, end));
+        position = end;
+        return value;
+    }
+
+    /*
+     * Throws unless bytes start..end are a decimal number Scanner.nextDouble() accepts in
+     * Locale.US, ignoring thousands separators: [+-] digits [. digits] [(e|E) [+-] digits],
+     * with digits on at least one side of the point, or [+-] NaN or Infinity.
+     */
+    private void checkDecimal(int start, int end) {
+        if (start == limit) {
+            throw new NoSuchElementException();
+        }
+        int i = start;
+        if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+            i++;
+        }
+        if (matches(i, end, "NaN") || matches(i, end, "Infinity")) {
+            return;
+        }
+        int digits = 0;
+        while (i < end && isDigit(buffer.get(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && buffer.get(i) == '.') {
+            i++;
+            while (i < end && isDigit(buffer.get(i))) {
+                i++;
+                digits++;
+            }
+        }
+        boolean valid = digits > 0;
+        if (valid && i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            i++;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < end && isDigit(buffer.get(i))) {
+                i++;
+                exponentDigits++;
+            }
+            valid = exponentDigits > 0;
+        }
+        if (!valid || i != end) {
+            throw new InputMismatchException(string(start, end));
+        }
+    }
+
+    private static boolean isDigit(int b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private boolean matches(int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (buffer.get(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Characters and lines
+     */
+
+    public char readChar() {
+        if (pendingLowSurrogate != 0) {
+            char low = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+            return low;
+        }
+        if (position == limit) {
+            throw new NoSuchElementException();
+        }
+        int b = buffer.get(position);
+        if (b >= 0) {
+            position++;
+            return (char) b;
+        }
+        int codePoint = decode(position);
+        position += encodedLength(position);
+        if (Character.isSupplementaryCodePoint(codePoint)) {
+            pendingLowSurrogate = Character.lowSurrogate(codePoint);
+            return Character.highSurrogate(codePoint);
+        }
+        return (char) codePoint;
+    }
+
+    // The rest of the current line without its line separator, null at the end of the input
+    public String readLine() {
+        pendingLowSurrogate = 0;
+        if (position == limit) {
+            return null;
+        }
+        int start = position;
+        int i = position;
+        while (i < limit) {
+            int b = buffer.get(i);
+            if (b == '\n') {
+                position = i + 1;
+                return string(start, i);
+            }
+            if (b == '\r') {
+                position = i + 1 < limit && buffer.get(i + 1) == '\n' ? i + 2 : i + 1;
+                return string(start, i);
+            }
+            if (b >= 0) {
+                i++;
+                continue;
+            }
+            int codePoint = decode(i);
+            int length = encodedLength(i);
+            if (codePoint == '\u0085' || codePoint == '\u2028' || codePoint == '\u2029') {
+                position = i + length;
+                return string(start, i);
+            }
+            i += length;
+        }
+        position = limit;
+        return string(start, limit);
+    }
+
+    // Everything that is left, "" if nothing is
+    public String readAll() {
+        pendingLowSurrogate = 0;
+        String rest = string(position, limit);
+        position = limit;
+        return rest;
+    }
+
+    /*
+     * UTF-8
+     */
+
+    private String string(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Bytes in the UTF-8 sequence starting at i, 1 for a malformed lead byte
+    private int encodedLength(int i) {
+        int b = buffer.get(i) & 0xFF;
+        int length = b < 0x80 ? 1 : b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+        return Math.min(length, limit - i);
+    }
+
+    // Code point of the UTF-8 sequence starting at i, U+FFFD if it is malformed
+    private int decode(int i) {
+        int length = encodedLength(i);
+        int b = buffer.get(i) & 0xFF;
+        if (length == 1) {
+            return b < 0x80 ? b : 0xFFFD;
+        }
+        int codePoint = b & (0x3F >> (length - 1));
+        for (int k = 1; k < length; k++) {
+            int next = buffer.get(i + k) & 0xFF;
+            if ((next & 0xC0) != 0x80) {
+                return 0xFFFD;
+            }
+            codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+        return codePoint;
+    }
+}
@@ -0,0 +1,407 @@
+package restaurant;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * This file is a discrete-event simulation of a service at RUHungry.
+ *
+ * Parties arrive at random, wait in line for a table, are seated with RUHungry.seatParty(),
+ * order one dish for the whole party with RUHungry.order(), eat, and leave with
+ * RUHungry.leaveTable(). Events are kept in a priority queue ordered by simulated time
+ * (minutes), so the run takes as long as the events take to process, not as long as the
+ * simulated day.
+ *
+ * A run is one day of service: the parties arrive spread over serviceMinutes (a Poisson
+ * process with mean gap serviceMinutes / parties, unless setMeanArrivalGap() fixes the gap),
+ * the doors close at the end of it, parties still in line then go home, and the ones at
+ * tables finish their meal.
+ *
+ * A share of the parties (setOversizedShare(), 5% by default) is one person larger than the
+ * largest table; they are turned away at the door.
+ *
+ * Before opening, each ingredient is brought up to its expected use for the day (plus a
+ * tenth), worked out from the menu, the mean party size and how many orders the tables can
+ * take. The delivery is bought with RUHungry.restock(), so its cost is in the ledger like any
+ * other restock; since restock() pays out of profit, the owners first put in an opening float
+ * of that cost, rounded up to a dollar (a "float" transaction). The profit reported for the
+ * day leaves the float out: it is the orders' margin less everything bought, including the
+ * stock still on the shelves at closing. setRestock() adds restocks of a fixed amount at a
+ * fixed interval during service on top of (or, with setStockForDay(false), instead of) the
+ * opening delivery; those are only paid out of the day's margin.
+ *
+ * The restaurant passed in must already have its menu, stock (with prices) and tables loaded.
+ * defaultTables() is a 30 table dining room for when there is no tables file.
+ *
+ * Execution: java restaurant.DiningSimulation [parties] [seed] [tablesFile]
+ * Without a tables file the restaurant gets defaultTables().
+ */
+
+public class DiningSimulation {
+
+    private static final int ARRIVE = 0;
+    private static final int ORDER  = 1;
+    private static final int DEPART = 2;
+    private static final int RESTOCK = 3;
+    private static final int CLOSE  = 4;
+
+    // Defaults, in simulated minutes
+    public static final double DEFAULT_SERVICE_MINUTES = 14 * 60; // 10:00 to midnight
+    public static final double DEFAULT_ORDER_DELAY = 5;
+    public static final double DEFAULT_DINING_TIME = 45;
+    public static final double DEFAULT_OVERSIZED_SHARE = 0.05;
+    public static final int DEFAULT_PARTIES = 250; // about what defaultTables() seats in a day
+
+    // defaultTables(): how many tables of each size
+    private static final int[][] DEFAULT_TABLES = { {10, 2}, {10, 4}, {6, 6}, {4, 8} };
+
+    private static class Party {
+        final People people;
+        final double arrivalTime;
+
+        Party(People people, double arrivalTime) {
+            this.people = people;
+            this.arrivalTime = arrivalTime;
+        }
+    }
+
+    private static class Event implements Comparable<Event> {
+        final double time;
+        final long sequence; // breaks ties so events at the same time run in scheduling order
+        final int type;
+        final Party party;
+
+        Event(double time, long sequence, int type, Party party) {
+            this.time = time;
+            this.sequence = sequence;
+            this.type = type;
+            this.party = party;
+        }
+
+        public int compareTo(Event other) {
+            int byTime = Double.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final RUHungry restaurant;
+    private final Random random;
+    private final List<Dish> dishes;
+    private final List<String> ingredients;
+    private final int largestTable;
+
+    // Settings, in simulated minutes
+    private double serviceMinutes = DEFAULT_SERVICE_MINUTES; // arrivals stop and the line goes home after this
+    private double meanArrivalGap = 0;    // average time between two arrivals, 0 for serviceMinutes / parties
+    private double meanOrderDelay = DEFAULT_ORDER_DELAY; // average time from being seated to ordering
+    private double meanDiningTime = DEFAULT_DINING_TIME; // average time from ordering to leaving
+    private double oversizedShare = DEFAULT_OVERSIZED_SHARE; // share of parties larger than any table
+    private boolean stockForDay = true;   // top up each ingredient to the day's expected use before opening
+    private double restockInterval = 0;   // time between restocks, 0 disables restocking
+    private int restockAmount = 50;       // amount of every ingredient ordered at each restock
+
+    // Run state
+    private PriorityQueue<Event> events;
+    private long sequence;
+    private Queue<Party> waiting;
+    private double now;
+    private boolean open;
+
+    // Measurements
+    private int arrived;
+    private int seated;
+    private int turnedAway;
+    private int leftAtClose;
+    private double totalWait;
+    private double maxWait;
+    private int maxLine;
+    private int ordersServed;
+    private int ordersFailed;
+    private long stockAtStart;
+    private long stockDelivered; // delivered before opening
+    private double openingFloat;  // paid in to buy the opening delivery
+    private double profitAtStart;
+    private double orderProfitAtStart;
+    private double restockProfitAtStart;
+    private long stockRestocked;
+
+    public DiningSimulation(RUHungry restaurant, long seed) {
+        this.restaurant = restaurant;
+        this.random = new Random(seed);
+
+        dishes = new ArrayList<>();
+        for (MenuNode category : restaurant.getMenu()) {
+            for (MenuNode ptr = category; ptr != null; ptr = ptr.getNextMenuNode()) {
+                dishes.add(ptr.getDish());
+            }
+        }
+        ingredients = new ArrayList<>();
+        for (StockNode chain : restaurant.getStockVar()) {
+            for (StockNode ptr = chain; ptr != null; ptr = ptr.getNextStockNode()) {
+                ingredients.add(ptr.getIngredient().getName());
+            }
+        }
+        int largest = 0;
+        for (int seats : restaurant.getTablesInfo()[0]) {
+            largest = Math.max(largest, seats);
+        }
+        largestTable = largest;
+    }
+
+    public void setServiceMinutes(double minutes) { serviceMinutes = minutes; }
+    public void setMeanArrivalGap(double minutes) { meanArrivalGap = minutes; } // 0 spreads the parties over the service
+    public void setMeanOrderDelay(double minutes) { meanOrderDelay = minutes; }
+    public void setMeanDiningTime(double minutes) { meanDiningTime = minutes; }
+    public void setOversizedShare(double share) { oversizedShare = share; }
+    public void setStockForDay(boolean stockForDay) { this.stockForDay = stockForDay; }
+    public void setRestock(double intervalMinutes, int amount) { restockInterval = intervalMinutes; restockAmount = amount; }
+
+    // Runs a day of service for the given number of parties and returns what was measured
+    public String run(int parties) {
+        events = new PriorityQueue<>();
+        sequence = 0;
+        waiting = new Queue<Party>();
+        now = 0;
+        open = true;
+        arrived = seated = turnedAway = leftAtClose = maxLine = ordersServed = ordersFailed = 0;
+        totalWait = maxWait = 0;
+        stockAtStart = totalStock();
+        stockDelivered = stockRestocked = 0;
+        openingFloat = 0;
+        profitAtStart = restaurant.profit();
+        orderProfitAtStart = restaurant.profit("order");
+        restockProfitAtStart = restaurant.profit("restock");
+
+        double arrivalGap = meanArrivalGap > 0 ? meanArrivalGap : serviceMinutes / Math.max(1, parties);
+        if (stockForDay) {
+            deliverOpeningStock(arrivalGap);
+        }
+
+        schedule(0, ARRIVE, null);
+        schedule(serviceMinutes, CLOSE, null);
+        if (restockInterval > 0 && restockInterval < serviceMinutes) {
+            schedule(restockInterval, RESTOCK, null);
+        }
+
+        while (!events.isEmpty()) {
+            Event event = events.poll();
+            now = event.time;
+            switch (event.type) {
+                case ARRIVE:
+                    arrive(parties, arrivalGap);
+                    break;
+                case ORDER:
+                    order(event.party);
+                    break;
+                case DEPART:
+                    depart(event.party);
+                    break;
+                case RESTOCK:
+                    restock();
+                    break;
+                case CLOSE:
+                    close();
+                    break;
+                default:
+                    throw new IllegalStateException("unknown event " + event.type);
+            }
+        }
+        return report();
+    }
+
+    private void schedule(double time, int type, Party party) {
+        events.add(new Event(time, sequence++, type, party));
+    }
+
+    // Exponentially distributed delay with the given mean
+    private double delay(double mean) {
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    private void arrive(int parties, double arrivalGap) {
+        if (!open) {
+            return;
+        }
+        arrived++;
+        int size = random.nextDouble() < oversizedShare ? largestTable + 1 : 1 + random.nextInt(Math.max(1, largestTable));
+        Party party = new Party(new People(size, "Party" + arrived, -1), now);
+        if (size > largestTable) {
+            turnedAway++;
+        } else {
+            waiting.enqueue(party);
+            maxLine = Math.max(maxLine, waiting.size());
+            seatWaiting();
+        }
+        if (arrived < parties) {
+            schedule(now + delay(arrivalGap), ARRIVE, null);
+        }
+    }
+
+    // End of service: no more arrivals or restocks, and whoever is still in line goes home
+    private void close() {
+        open = false;
+        while (!waiting.isEmpty()) {
+            waiting.dequeue();
+            leftAtClose++;
+        }
+    }
+
+    // Seats parties from the front of the line for as long as the front party fits somewhere
+    private void seatWaiting() {
+        while (!waiting.isEmpty() && restaurant.seatParty(waiting.peek().people)) {
+            Party party = waiting.dequeue();
+            seated++;
+            double wait = now - party.arrivalTime;
+            totalWait += wait;
+            maxWait = Math.max(maxWait, wait);
+            schedule(now + delay(meanOrderDelay), ORDER, party);
+        }
+    }
+
+    private void order(Party party) {
+        Dish dish = dishes.get(random.nextInt(dishes.size()));
+        if (restaurant.order(dish.getDishName(), party.people.getNumberInParty()).getSuccess()) {
+            ordersServed++;
+        } else {
+            ordersFailed++;
+        }
+        schedule(now + delay(meanDiningTime), DEPART, party);
+    }
+
+    private void depart(Party party) {
+        restaurant.leaveTable(party.people.getTableIndex());
+        seatWaiting();
+    }
+
+    private void restock() {
+        if (!open) {
+            return;
+        }
+        for (String ingredient : ingredients) {
+            TransactionData restocked = restaurant.restock(ingredient, restockAmount);
+            if (restocked != null && restocked.getSuccess()) {
+                stockRestocked += restockAmount;
+            }
+        }
+        if (now + restockInterval < serviceMinutes) {
+            schedule(now + restockInterval, RESTOCK, null);
+        }
+    }
+
+    /*
+     * Brings each ingredient up to its expected use over the service plus a tenth. Orders per
+     * minute are the arrival rate of parties that fit a table, capped by how fast the tables
+     * turn over; each order is one random dish for a party of 1 to largestTable people. The
+     * float covering the delivery is recorded first so that every restock() goes through.
+     */
+    private void deliverOpeningStock(double arrivalGap) {
+        int tableCount = restaurant.getTablesInfo()[0].length;
+        double fits = 1 - oversizedShare;
+        double ordersPerMinute = Math.min(fits / arrivalGap, tableCount / (meanOrderDelay + meanDiningTime));
+        double unitsPerOrder = (1 + largestTable) / 2.0 / Math.max(1, dishes.size());
+        HashMap<Integer, Double> uses = new HashMap<>(); // ingredient ID -> expected units per order
+        for (Dish dish : dishes) {
+            for (int ingredientID : dish.getStockID()) {
+                uses.merge(ingredientID, unitsPerOrder, Double::sum);
+            }
+        }
+        List<Ingredient> delivery = new ArrayList<>();
+        List<Integer> amounts = new ArrayList<>();
+        double cost = 0;
+        for (StockNode chain : restaurant.getStockVar()) {
+            for (StockNode ptr = chain; ptr != null; ptr = ptr.getNextStockNode()) {
+                Ingredient ingredient = ptr.getIngredient();
+                double expected = uses.getOrDefault(ingredient.getID(), 0.0) * ordersPerMinute * serviceMinutes * 1.1;
+                long missing = (long) Math.ceil(expected) - ingredient.getStockLevel();
+                if (missing > 0) {
+                    int amount = (int) Math.min(missing, Integer.MAX_VALUE - ingredient.getStockLevel());
+                    delivery.add(ingredient);
+                    amounts.add(amount);
+                    cost += ingredient.getCost() * amount;
+                }
+            }
+        }
+        if (delivery.isEmpty()) {
+            return;
+        }
+        openingFloat = Math.ceil(cost); // whole dollars, which also covers rounding in the running profit
+        restaurant.addTransactionNode(new TransactionData("float", "opening float", 0, openingFloat, true));
+        for (int i = 0; i < delivery.size(); i++) {
+            TransactionData restocked = restaurant.restock(delivery.get(i).getName(), amounts.get(i));
+            if (restocked != null && restocked.getSuccess()) {
+                stockDelivered += amounts.get(i);
+            }
+        }
+    }
+
+    // The 30 table dining room used when no tables file is given: 10 for two, 10 for four, 6 for six, 4 for eight
+    public static ByteTokenizer defaultTables() {
+        int count = 0;
+        StringBuilder lines = new StringBuilder();
+        for (int[] size : DEFAULT_TABLES) {
+            for (int t = 0; t < size[0]; t++) {
+                lines.append("1 ").append(size[1]).append('\n'); // in RUHungry's format: 1 table of size[1] seats
+                count++;
+            }
+        }
+        String text = count + "\n" + lines;
+        return new ByteTokenizer(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private long totalStock() {
+        long total = 0;
+        for (StockNode chain : restaurant.getStockVar()) {
+            for (StockNode ptr = chain; ptr != null; ptr = ptr.getNextStockNode()) {
+                total += ptr.getIngredient().getStockLevel();
+            }
+        }
+        return total;
+    }
+
+    private String report() {
+        int tableCount = restaurant.getTablesInfo()[0].length;
+        long stockUsed = stockAtStart + stockDelivered + stockRestocked - totalStock();
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("Simulated %.1f minutes (%.0f of service)%n", now, serviceMinutes));
+        s.append(String.format("Parties: %d arrived, %d seated, %d turned away (too large), %d still in line at closing%n",
+                arrived, seated, turnedAway, leftAtClose));
+        s.append(String.format("Table turnover: %.2f seatings per table (%d tables)%n", (double) seated / tableCount, tableCount));
+        s.append(String.format("Wait for a table: %.2f min average, %.2f min max, longest line %d%n",
+                seated == 0 ? 0 : totalWait / seated, maxWait, maxLine));
+        s.append(String.format("Orders: %d served, %d failed%n", ordersServed, ordersFailed));
+        s.append(String.format("Stock: %d units at start, %d delivered before opening, %d restocked, %d used, %d left%n",
+                stockAtStart, stockDelivered, stockRestocked, stockUsed, totalStock()));
+        s.append(String.format("Profit: $%.2f for the day, $%.2f on orders and $%.2f on restocks (opening float of $%.2f not counted)%n",
+                restaurant.profit() - profitAtStart - openingFloat, restaurant.profit("order") - orderProfitAtStart,
+                restaurant.profit("restock") - restockProfitAtStart, openingFloat));
+        return s.toString();
+    }
+
+    public static void main(String[] args) {
+        int parties = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PARTIES;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        String tablesFile = args.length > 2 ? args[2] : null;
+
+        RUHungry restaurant = new RUHungry();
+        restaurant.menu("menu.in");
+        restaurant.createStockHashTable("stock.in");
+        restaurant.updatePriceAndProfit();
+        if (tablesFile != null) {
+            restaurant.createTables(tablesFile);
+        } else {
+            restaurant.createTables(defaultTables());
+        }
+
+        long start = System.nanoTime();
+        String report = new DiningSimulation(restaurant, seed).run(parties);
+        long elapsed = System.nanoTime() - start;
+
+        StdOut.print(report);
+        StdOut.printf("Ran in %.2f s%n", elapsed / 1e9);
+    }
+}
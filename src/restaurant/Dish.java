@@ -13,6 +13,7 @@ public class Dish {
     private int[] stockID; // 1-D int array where each index is the ID of the ingredient needed for the dish
     private double price; // price of the dish
     private double profit; // profit made when selling a dish
+    private int ordinal; // position of the dish on the menu (0, 1, 2, ...), set by RUHungry.menu()
 
     // constructor
     public Dish (String category, String dishName, int[] stockID) {
@@ -33,4 +34,7 @@ public class Dish {
 
     public double getProfit() { return profit; }
     public void setProfit(double profit) { this.profit = profit; }
+
+    public int getOrdinal() { return ordinal; }
+    public void setOrdinal(int ordinal) { this.ordinal = ordinal; }
 }
@@ -0,0 +1,357 @@
+package restaurant;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This file collects counters and histograms from a RUHungry's hot paths, once attached
+ * with restaurant.setMetrics(metrics):
+ *
+ *  - orders, failed orders (neither the dish nor any substitute could be served) and orders
+ *    served by a substitute, plus how many substitutes orders tried
+ *  - donations and restocks, and how many of them the profit check turned away
+ *  - how many chain nodes findStockNode(int) visits for the ingredients of an order
+ *  - latency of order, donation, restock, seatAllGuests and the menu/stock/tables loaders
+ *
+ * Counters are LongAdders and histograms are striped LogHistograms, so threads in concurrent
+ * mode do not contend on them. The one counter every order touches, the order count, is kept
+ * per thread instead, since even an uncontended LongAdder increment is an atomic instruction
+ * that costs about as much as the rest of an order's metrics together. When a new thread
+ * starts counting, the cells of threads that have ended are folded into one total and
+ * dropped, so a server starting a thread per connection keeps one cell per live thread.
+ *
+ * The counters count every call; the order, donation and restock histograms record a random
+ * sample of one call in sampleInterval (256 by default, 1 records every call), and probe
+ * lengths are taken for the sampled orders. Each thread counts down a random gap (1 to
+ * 2 * sampleInterval - 1 calls) to its next sample, so an unsampled order costs a decrement
+ * and the order count: no clock reads, no random numbers and no histogram updates. One
+ * thread at a time keeps its cell in a field, so a single ordering thread also skips the
+ * ThreadLocal lookup; the field only changes hands when its thread has ended, so threads in
+ * concurrent mode do not fight over it. HotPathBenchmark's order(metrics) measures the
+ * overhead against plain orders.
+ *
+ * toPrometheus() renders everything in the Prometheus text format, which writeTo() saves to
+ * a file (e.g. for node_exporter's textfile collector) and startEndpoint() serves over HTTP.
+ */
+
+public class EngineMetrics {
+
+    public static final int DEFAULT_SAMPLE_INTERVAL = 256;
+
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final int gapRange; // sample gaps are 1 to gapRange calls
+
+    /*
+     * Each thread's order count and sampler state. Only the owning thread writes a cell;
+     * getOrders() adds up every cell plus the counts of threads that have ended.
+     */
+    private static final class ThreadCell {
+        final WeakReference<Thread> owner;
+        long orders;     // written with ORDERS.setOpaque so other threads read whole values
+        int random;      // xorshift state for the sample gaps
+        int untilSample; // calls left until the next sampled one
+
+        ThreadCell(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        boolean isOwnerAlive() {
+            Thread thread = owner.get();
+            return thread != null && thread.isAlive();
+        }
+    }
+
+    private static final VarHandle ORDERS;
+    static {
+        try {
+            ORDERS = MethodHandles.lookup().findVarHandle(ThreadCell.class, "orders", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final List<ThreadCell> cells = new ArrayList<>(); // cells of live threads, guarded by itself
+    private long endedOrders;                                 // orders of ended threads, guarded by cells
+    private final ThreadLocal<ThreadCell> cell = ThreadLocal.withInitial(() -> {
+        Thread current = Thread.currentThread();
+        ThreadCell created = new ThreadCell(current);
+        created.random = (int) current.getId() * 0x9E3779B9 | 1;
+        created.untilSample = nextGap(created);
+        synchronized (cells) {
+            retireEndedCells();
+            cells.add(created);
+        }
+        return created;
+    });
+    private ThreadCell ownCell; // one live thread's cell, read without the ThreadLocal lookup
+
+    private final LongAdder ordersFailed = new LongAdder();
+    private final LongAdder ordersSubstituted = new LongAdder();
+    private final LongAdder donations = new LongAdder();
+    private final LongAdder donationsRejected = new LongAdder(); // turned away by the profit check
+    private final LongAdder restocks = new LongAdder();
+    private final LongAdder restocksRejected = new LongAdder();  // turned away by the profit check
+
+    private final LogHistogram substitutions = new LogHistogram(); // substitutes tried per sampled order
+    private final LogHistogram probes = new LogHistogram();        // chain nodes visited per ingredient of a sampled order
+
+    // Latencies in nanoseconds
+    private final LogHistogram orderLatency = new LogHistogram();
+    private final LogHistogram donationLatency = new LogHistogram();
+    private final LogHistogram restockLatency = new LogHistogram();
+    private final LogHistogram seatingLatency = new LogHistogram();
+    private final LogHistogram menuLoadLatency = new LogHistogram();
+    private final LogHistogram stockLoadLatency = new LogHistogram();
+    private final LogHistogram tablesLoadLatency = new LogHistogram();
+
+    public EngineMetrics() {
+        this(DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    // sampleInterval is rounded up to a power of two
+    public EngineMetrics(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sampleInterval must be at least 1: " + sampleInterval);
+        }
+        gapRange = 2 * Integer.highestOneBit(sampleInterval * 2 - 1) - 1;
+    }
+
+    /*
+     * Recording, called by RUHungry
+     */
+
+    // The calling thread's cell; owner is final, so a cell read from ownCell is safe to check
+    private ThreadCell currentCell() {
+        ThreadCell c = ownCell;
+        if (c != null && c.owner.get() == Thread.currentThread()) {
+            return c;
+        }
+        ThreadCell mine = cell.get();
+        if (c == null || !c.isOwnerAlive()) {
+            ownCell = mine;
+        }
+        return mine;
+    }
+
+    // True for a random one in sampleInterval calls on average
+    private boolean sample(ThreadCell c) {
+        if (--c.untilSample > 0) {
+            return false;
+        }
+        c.untilSample = nextGap(c);
+        return true;
+    }
+
+    private int nextGap(ThreadCell c) {
+        int x = c.random;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        c.random = x;
+        return 1 + (x >>> 1) % gapRange;
+    }
+
+    // The start time to pass to record...(), or NOT_TIMED if this call is not sampled
+    long startSampled() {
+        return sample(currentCell()) ? System.nanoTime() : NOT_TIMED;
+    }
+
+    // Counts an order and returns its start time like startSampled()
+    long startOrder() {
+        ThreadCell c = currentCell();
+        ORDERS.setOpaque(c, c.orders + 1);
+        return sample(c) ? System.nanoTime() : NOT_TIMED;
+    }
+
+    boolean isSampled(long start) {
+        return start != NOT_TIMED;
+    }
+
+    // substitutesTried is how many dishes order() tried after the one asked for
+    void recordOrder(boolean served, int substitutesTried, long start) {
+        if (!served) {
+            ordersFailed.increment();
+        } else if (substitutesTried > 0) {
+            ordersSubstituted.increment();
+        }
+        if (start != NOT_TIMED) {
+            orderLatency.record(System.nanoTime() - start);
+            substitutions.record(substitutesTried);
+        }
+    }
+
+    void recordDonation(long start) {
+        donations.increment();
+        recordSince(donationLatency, start);
+    }
+
+    void recordRestock(long start) {
+        restocks.increment();
+        recordSince(restockLatency, start);
+    }
+
+    void donationRejected() { donationsRejected.increment(); }
+    void restockRejected() { restocksRejected.increment(); }
+
+    void recordProbes(int length) { probes.record(length); }
+
+    // Seating and loading are timed on every call
+    void recordSeating(long start) { seatingLatency.record(System.nanoTime() - start); }
+    void recordMenuLoad(long start) { menuLoadLatency.record(System.nanoTime() - start); }
+    void recordStockLoad(long start) { stockLoadLatency.record(System.nanoTime() - start); }
+    void recordTablesLoad(long start) { tablesLoadLatency.record(System.nanoTime() - start); }
+
+    private static void recordSince(LogHistogram histogram, long start) {
+        if (start != NOT_TIMED) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /*
+     * Reading
+     */
+
+    public long getOrders() {
+        synchronized (cells) {
+            retireEndedCells();
+            long sum = endedOrders;
+            for (ThreadCell c : cells) {
+                sum += (long) ORDERS.getOpaque(c);
+            }
+            return sum;
+        }
+    }
+
+    /*
+     * Moves the counts of threads that have ended into endedOrders. A thread that has ended
+     * writes its cell no more, and its last write happens-before isAlive() returning false.
+     * Call holding the cells lock.
+     */
+    private void retireEndedCells() {
+        for (Iterator<ThreadCell> it = cells.iterator(); it.hasNext(); ) {
+            ThreadCell c = it.next();
+            if (!c.isOwnerAlive()) {
+                endedOrders += (long) ORDERS.getOpaque(c);
+                it.remove();
+            }
+        }
+    }
+
+    public long getOrdersFailed() { return ordersFailed.sum(); }
+    public long getOrdersSubstituted() { return ordersSubstituted.sum(); }
+    public long getDonations() { return donations.sum(); }
+    public long getDonationsRejected() { return donationsRejected.sum(); }
+    public long getRestocks() { return restocks.sum(); }
+    public long getRestocksRejected() { return restocksRejected.sum(); }
+
+    public LogHistogram getSubstitutions() { return substitutions; }
+    public LogHistogram getProbeLengths() { return probes; }
+    public LogHistogram getOrderLatency() { return orderLatency; }
+    public LogHistogram getDonationLatency() { return donationLatency; }
+    public LogHistogram getRestockLatency() { return restockLatency; }
+    public LogHistogram getSeatingLatency() { return seatingLatency; }
+    public LogHistogram getMenuLoadLatency() { return menuLoadLatency; }
+    public LogHistogram getStockLoadLatency() { return stockLoadLatency; }
+    public LogHistogram getTablesLoadLatency() { return tablesLoadLatency; }
+
+    /*
+     * Prometheus text format
+     */
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        counter(out, "ruhungry_orders_total", "Orders taken.", getOrders());
+        counter(out, "ruhungry_orders_failed_total", "Orders where neither the dish nor any substitute could be served.", ordersFailed.sum());
+        counter(out, "ruhungry_orders_substituted_total", "Orders served by a substitute dish.", ordersSubstituted.sum());
+        counter(out, "ruhungry_donations_total", "Donations requested.", donations.sum());
+        counter(out, "ruhungry_donations_rejected_total", "Donations turned away because profit was not above 50.", donationsRejected.sum());
+        counter(out, "ruhungry_restocks_total", "Restocks requested.", restocks.sum());
+        counter(out, "ruhungry_restocks_rejected_total", "Restocks turned away because profit did not cover the cost.", restocksRejected.sum());
+
+        summary(out, "ruhungry_order_substitutions", "Substitute dishes tried per order, sampled.", null, substitutions.snapshot(), 1);
+        summary(out, "ruhungry_stock_probe_length", "Chain nodes findStockNode(int) visits per ingredient of an order, sampled.", null, probes.snapshot(), 1);
+
+        summary(out, "ruhungry_order_duration_seconds", "Time to serve or fail an order, sampled.", null, orderLatency.snapshot(), 1e9);
+        summary(out, "ruhungry_donation_duration_seconds", "Time to process a donation, sampled.", null, donationLatency.snapshot(), 1e9);
+        summary(out, "ruhungry_restock_duration_seconds", "Time to process a restock, sampled.", null, restockLatency.snapshot(), 1e9);
+        summary(out, "ruhungry_seat_all_guests_duration_seconds", "Time of each seatAllGuests() call.", null, seatingLatency.snapshot(), 1e9);
+
+        String load = "ruhungry_load_duration_seconds";
+        out.append("# HELP ").append(load).append(" Time to parse and install an input file.\n");
+        out.append("# TYPE ").append(load).append(" summary\n");
+        summary(out, load, null, "file=\"menu\"", menuLoadLatency.snapshot(), 1e9);
+        summary(out, load, null, "file=\"stock\"", stockLoadLatency.snapshot(), 1e9);
+        summary(out, load, null, "file=\"tables\"", tablesLoadLatency.snapshot(), 1e9);
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    // help is null when the HELP and TYPE lines were already written for another label
+    private static void summary(StringBuilder out, String name, String help, String label,
+                                LogHistogram.Snapshot snapshot, double divisor) {
+        if (help != null) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(" summary\n");
+        }
+        String labels = label == null ? "" : label + ",";
+        for (double q : QUANTILES) {
+            out.append(name).append('{').append(labels).append("quantile=\"").append(q).append("\"} ")
+               .append(snapshot.getValueAtQuantile(q) / divisor).append('\n');
+        }
+        String suffix = label == null ? "" : "{" + label + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(snapshot.getSum() / divisor).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(snapshot.getCount()).append('\n');
+    }
+
+    // Replaces file with the current metrics in one rename, so a reader never sees half a file
+    public void writeTo(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, toPrometheus().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /*
+     * Serves the metrics at http://localhost:port/metrics on the loopback interface, port 0
+     * picks a free port. Stop it with server.stop(0).
+     */
+    public HttpServer startEndpoint(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
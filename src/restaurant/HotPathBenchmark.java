@@ -0,0 +1,438 @@
+package restaurant;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * This file times RUHungry's hot paths so every performance change can be compared against
+ * a baseline. The JMH benchmarks in bench/ (HotPathJmh, see bench/pom.xml) are the reference
+ * numbers; this runner is the fallback for machines without Maven or the JMH jars, and the
+ * only one that measures ledger heap; the two share the input generator below. It times
+ * findDish, findStockNode (by ID and by name), checkDishAvailability, order (served
+ * directly, through a substitute, and with EngineMetrics or a TransactionWal attached, timed
+ * against plain orders to check that collecting metrics and logging stay cheap),
+ * addTransactionNode, profit(), updatePriceAndProfit and the menu/stock/tables file loaders,
+ * plus the heap a ledger takes per transaction as a TransactionNode list and as a columnar
+ * TransactionLog.
+ *
+ * Each benchmark runs in timed iterations: a few warm-up iterations that are thrown away,
+ * then measured ones, each repeating the operation for about iterationMillis. The result is
+ * the mean time per operation and its standard deviation across the measured iterations.
+ * order(metrics) and order(wal) instead run pairs short batches with and without EngineMetrics
+ * (or a TransactionWal) attached and print the median overhead, see compare(). Operation results are folded into a sink so the JIT
+ * cannot remove the work.
+ *
+ * Menus, stock and ledgers are generated from a fixed seed, so runs are reproducible:
+ * dishes come 10 to a category with 3 ingredients each, and every category's first dish also
+ * needs an ingredient that is never in stock, so ordering it goes to a substitute.
+ *
+ * Execution: java restaurant.HotPathBenchmark [dishes=1000] [table=101] [ledger=100000]
+ *            [warmup=5] [iterations=5] [millis=200] [pairs=400] [only=name,...]
+ * dishes, table (stock hashtable size) and ledger (transactions already recorded) take
+ * comma-separated lists; every combination is run.
+ */
+
+public class HotPathBenchmark {
+
+    static final long SEED = 42;
+    private static final int DISHES_PER_CATEGORY = 10;
+    private static final int INGREDIENTS_PER_DISH = 3;
+    static final int FIRST_INGREDIENT_ID = 100;
+    private static final String[] TYPES = {"order", "donation", "restock"};
+
+    private static long sink; // every operation's result is added here
+
+    // Settings
+    private static int warmup = 5;
+    private static int iterations = 5;
+    private static int pairs = 400;     // for compare()
+    private static long iterationNanos = 200_000_000L;
+    private static List<String> only = null;
+
+    public static void main(String[] args) throws IOException {
+        int[] dishCounts = {1000};
+        int[] tableSizes = {101};
+        int[] ledgerLengths = {100_000};
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("expected name=value: " + arg);
+            }
+            switch (pair[0]) {
+                case "dishes":     dishCounts = ints(pair[1]); break;
+                case "table":      tableSizes = ints(pair[1]); break;
+                case "ledger":     ledgerLengths = ints(pair[1]); break;
+                case "warmup":     warmup = Integer.parseInt(pair[1]); break;
+                case "iterations": iterations = Integer.parseInt(pair[1]); break;
+                case "pairs":      pairs = Integer.parseInt(pair[1]); break;
+                case "millis":     iterationNanos = Long.parseLong(pair[1]) * 1_000_000L; break;
+                case "only":       only = Arrays.asList(pair[1].split(",")); break;
+                default: throw new IllegalArgumentException("unknown setting: " + pair[0]);
+            }
+        }
+
+        StdOut.printf("%-22s %7s %6s %8s %14s %10s\n", "benchmark", "dishes", "table", "ledger", "ns/op", "+/-");
+        for (int dishes : dishCounts) {
+            for (int table : tableSizes) {
+                for (int ledger : ledgerLengths) {
+                    runAll(dishes, table, ledger);
+                }
+            }
+        }
+        if (sink == 42) {
+            StdOut.println(); // only here so the sink is read
+        }
+    }
+
+    private static int[] ints(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static void runAll(int dishes, int table, int ledger) throws IOException {
+        Path dir = Files.createTempDirectory("ruhungry-bench");
+        try {
+            Path menuFile = dir.resolve("menu.in");
+            Path stockFile = dir.resolve("stock.in");
+            Path tablesFile = dir.resolve("tables.in");
+            writeInputs(dishes, table, menuFile, stockFile, tablesFile);
+
+            RUHungry restaurant = load(menuFile, stockFile, ledger);
+            Random random = new Random(SEED);
+            String[] dishNames = dishNames(restaurant, false);
+            String[] unavailable = dishNames(restaurant, true);
+            int ingredients = ingredientCount(dishes);
+            String[] ingredientNames = new String[ingredients];
+            for (int i = 0; i < ingredients; i++) {
+                ingredientNames[i] = ingredientName(i);
+            }
+            String label = String.format("%7d %6d %8d", dishes, table, ledger);
+
+            run("findDish", label, () -> restaurant.findDish(dishNames[random.nextInt(dishNames.length)]).getDish().getOrdinal());
+            run("findStockNode(int)", label, () -> restaurant.findStockNode(FIRST_INGREDIENT_ID + random.nextInt(ingredients)).getIngredient().getStockLevel());
+            run("findStockNode(String)", label, () -> restaurant.findStockNode(ingredientNames[random.nextInt(ingredients)]).getIngredient().getID());
+            run("checkDishAvailability", label, () -> restaurant.checkDishAvailability(dishNames[random.nextInt(dishNames.length)], 1) ? 1 : 0);
+
+            // Orders grow the ledger, so each iteration starts again from the generated one
+            run("order", label, () -> {
+                restaurant.order(dishNames[random.nextInt(dishNames.length)], 1);
+                return restaurant.getLastTransactionNode().getData().getAmount();
+            }, () -> resetLedger(restaurant, ledger));
+            EngineMetrics metrics = new EngineMetrics();
+            compare("order(metrics)", label, () -> {
+                restaurant.order(dishNames[random.nextInt(dishNames.length)], 1);
+                return restaurant.getLastTransactionNode().getData().getAmount();
+            }, () -> {
+                resetLedger(restaurant, ledger);
+                restaurant.setMetrics(null);
+            }, () -> {
+                resetLedger(restaurant, ledger);
+                restaurant.setMetrics(metrics);
+            });
+            restaurant.setMetrics(null);
+            if (only == null || only.contains("order(wal)")) {
+                // Logged with the default group commit; the WAL is attached for the changed batches only
+                TransactionWal wal = TransactionWal.recover(restaurant, dir.resolve("bench.wal"));
+                restaurant.setWal(null);
+                try {
+                    compare("order(wal)", label, () -> {
+                        restaurant.order(dishNames[random.nextInt(dishNames.length)], 1);
+                        return restaurant.getLastTransactionNode().getData().getAmount();
+                    }, () -> {
+                        restaurant.setWal(null);
+                        resetLedger(restaurant, ledger);
+                    }, () -> {
+                        restaurant.setWal(null);
+                        resetLedger(restaurant, ledger);
+                        restaurant.setWal(wal);
+                    });
+                } finally {
+                    restaurant.setWal(null);
+                    wal.close();
+                }
+                resetLedger(restaurant, ledger);
+            }
+            run("order(substitute)", label, unavailable.length == 0 ? null : () -> {
+                restaurant.order(unavailable[random.nextInt(unavailable.length)], 1);
+                return restaurant.getLastTransactionNode().getData().getAmount();
+            }, () -> resetLedger(restaurant, ledger));
+            TransactionData data = new TransactionData("order", dishNames[0], 1, 2.5, true);
+            run("addTransactionNode", label, () -> {
+                restaurant.addTransactionNode(data);
+                return 1;
+            }, () -> resetLedger(restaurant, ledger));
+
+            resetLedger(restaurant, ledger);
+            run("profit", label, () -> (long) restaurant.profit());
+            ledgerHeap("ledger heap", label, restaurant, ledger);
+            run("updatePriceAndProfit", label, () -> {
+                restaurant.updatePriceAndProfit();
+                return 1;
+            });
+
+            run("menu(file)", label, () -> {
+                RUHungry fresh = new RUHungry();
+                fresh.menu(menuFile.toString());
+                return fresh.getMenu().length;
+            });
+            run("createStockHashTable", label, () -> {
+                RUHungry fresh = new RUHungry();
+                fresh.createStockHashTable(stockFile.toString());
+                return fresh.getStockVar().length;
+            });
+            run("createTables", label, () -> {
+                RUHungry fresh = new RUHungry();
+                fresh.createTables(tablesFile.toString());
+                return fresh.getTablesInfo()[0].length;
+            });
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    /*
+     * Timing
+     */
+
+    private static void run(String name, String label, LongSupplier operation) {
+        run(name, label, operation, null);
+    }
+
+    // beforeIteration (if not null) runs before each iteration, outside the timed part
+    private static void run(String name, String label, LongSupplier operation, Runnable beforeIteration) {
+        if (operation == null || (only != null && !only.contains(name))) {
+            return;
+        }
+        long batch = batchSize(operation, beforeIteration);
+
+        double[] nanosPerOp = new double[iterations];
+        for (int i = -warmup; i < iterations; i++) {
+            if (beforeIteration != null) {
+                beforeIteration.run();
+            }
+            long elapsed = time(operation, batch);
+            if (i >= 0) {
+                nanosPerOp[i] = (double) elapsed / batch;
+            }
+        }
+
+        print(name, label, nanosPerOp);
+    }
+
+    /*
+     * Measures what a change of setup costs an operation, e.g. attaching EngineMetrics. A few
+     * long iterations cannot show a difference of a few percent: JIT compilation and other
+     * processes move single iterations by far more than that, especially on one CPU. So this
+     * runs many short batches (a tenth of an iteration each) in pairs, one after beforeBaseline
+     * and one after beforeChanged, swapping which goes first every pair so drift hits both
+     * alike, and throws away the first warmup * 10 pairs. Prints the changed operation's time,
+     * then the median over pairs of changed / baseline time as a percentage, with the quartiles
+     * of the pair ratios in brackets.
+     */
+    private static void compare(String name, String label, LongSupplier operation,
+                                Runnable beforeBaseline, Runnable beforeChanged) {
+        if (only != null && !only.contains(name)) {
+            return;
+        }
+        long batch = Math.max(1, batchSize(operation, beforeChanged) / 10);
+
+        double[] nanosPerOp = new double[pairs];
+        double[] ratios = new double[pairs];
+        for (int i = -warmup * 10; i < pairs; i++) {
+            double[] pair = new double[2];
+            for (int k = 0; k < 2; k++) {
+                boolean changed = ((i + k) & 1) == 0;
+                (changed ? beforeChanged : beforeBaseline).run();
+                pair[changed ? 1 : 0] = (double) time(operation, batch) / batch;
+            }
+            if (i >= 0) {
+                nanosPerOp[i] = pair[1];
+                ratios[i] = pair[1] / pair[0];
+            }
+        }
+        print(name, label, nanosPerOp);
+        Arrays.sort(ratios);
+        StdOut.printf("%-22s %s %13.2f%%   [%.2f%%, %.2f%%]\n", "  overhead", label, (ratios[pairs / 2] - 1) * 100,
+                (ratios[pairs / 4] - 1) * 100, (ratios[pairs * 3 / 4] - 1) * 100);
+    }
+
+    /*
+     * Heap kept per transaction by a ledger of length transactions, stored as a TransactionNode
+     * list and as a columnar TransactionLog (RUHungry.setColumnarLedger()). Measured as the
+     * change in used heap across full GCs, printed in bytes per row.
+     */
+    private static void ledgerHeap(String name, String label, RUHungry restaurant, int length) {
+        if (only != null && !only.contains(name)) {
+            return;
+        }
+        for (boolean columnar : new boolean[] {false, true}) {
+            restaurant.setColumnarLedger(columnar);
+            resetLedger(restaurant, 0);
+            long empty = usedHeap();
+            resetLedger(restaurant, length);
+            long full = usedHeap();
+            StdOut.printf("%-22s %s %14.1f %10s\n", name + (columnar ? "(columnar)" : "(list)"), label,
+                    (double) (full - empty) / Math.max(1, length), "B/row");
+        }
+        restaurant.setColumnarLedger(false);
+        resetLedger(restaurant, length);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // How many operations take about one iteration
+    private static long batchSize(LongSupplier operation, Runnable beforeIteration) {
+        long batch = 1;
+        while (true) {
+            if (beforeIteration != null) {
+                beforeIteration.run();
+            }
+            long elapsed = time(operation, batch);
+            if (elapsed >= iterationNanos / 10 || batch >= Long.MAX_VALUE / 4) {
+                return Math.max(1, batch * iterationNanos / Math.max(1, elapsed));
+            }
+            batch *= 4;
+        }
+    }
+
+    // Mean and standard deviation across the measured iterations
+    private static void print(String name, String label, double[] nanosPerOp) {
+        double mean = 0;
+        for (double x : nanosPerOp) {
+            mean += x;
+        }
+        mean /= nanosPerOp.length;
+        double variance = 0;
+        for (double x : nanosPerOp) {
+            variance += (x - mean) * (x - mean);
+        }
+        int n = nanosPerOp.length;
+        double deviation = n > 1 ? Math.sqrt(variance / (n - 1)) : 0;
+        StdOut.printf("%-22s %s %14.1f %10.1f\n", name, label, mean, deviation);
+    }
+
+    private static long time(LongSupplier operation, long batch) {
+        long total = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < batch; i++) {
+            total += operation.getAsLong();
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += total;
+        return elapsed;
+    }
+
+    /*
+     * Generated inputs, in the same formats as menu.in, stock.in and tables*.in
+     */
+
+    static int ingredientCount(int dishes) {
+        return Math.max(INGREDIENTS_PER_DISH, dishes / 2);
+    }
+
+    static String ingredientName(int i) {
+        return "Ingredient " + i;
+    }
+
+    static void writeInputs(int dishes, int table, Path menuFile, Path stockFile, Path tablesFile) throws IOException {
+        Random random = new Random(SEED);
+        int ingredients = ingredientCount(dishes);
+        int scarceID = FIRST_INGREDIENT_ID + ingredients; // never in stock
+        int categories = (dishes + DISHES_PER_CATEGORY - 1) / DISHES_PER_CATEGORY;
+
+        try (PrintWriter menu = new PrintWriter(Files.newBufferedWriter(menuFile, StandardCharsets.UTF_8))) {
+            menu.println(categories);
+            int dish = 0;
+            for (int c = 0; c < categories; c++) {
+                int inCategory = Math.min(DISHES_PER_CATEGORY, dishes - dish);
+                menu.println("Category " + c);
+                menu.println(inCategory);
+                for (int d = 0; d < inCategory; d++, dish++) {
+                    // menu() prepends, so the last dish in the file is first in its category
+                    boolean first = d == inCategory - 1 && inCategory > 1;
+                    menu.println("Dish " + dish);
+                    StringBuilder line = new StringBuilder();
+                    line.append(first ? INGREDIENTS_PER_DISH + 1 : INGREDIENTS_PER_DISH);
+                    for (int k = 0; k < INGREDIENTS_PER_DISH; k++) {
+                        line.append(' ').append(FIRST_INGREDIENT_ID + random.nextInt(ingredients));
+                    }
+                    if (first) {
+                        line.append(' ').append(scarceID);
+                    }
+                    menu.println(line);
+                }
+            }
+        }
+
+        try (PrintWriter stock = new PrintWriter(Files.newBufferedWriter(stockFile, StandardCharsets.UTF_8))) {
+            stock.println(table);
+            for (int i = 0; i <= ingredients; i++) {
+                boolean scarce = i == ingredients;
+                stock.println((FIRST_INGREDIENT_ID + i) + " " + (scarce ? "Scarce" : ingredientName(i)));
+                // Plenty of stock so orders keep succeeding for the whole run
+                stock.printf(java.util.Locale.US, "%.2f %d\n", 0.5 + random.nextInt(1000) / 100.0, scarce ? 0 : Integer.MAX_VALUE / 2);
+            }
+        }
+
+        try (PrintWriter tables = new PrintWriter(Files.newBufferedWriter(tablesFile, StandardCharsets.UTF_8))) {
+            int count = Math.max(1, dishes / 10);
+            tables.println(count);
+            for (int t = 0; t < count; t++) {
+                tables.println("1 " + (2 + random.nextInt(7)));
+            }
+        }
+    }
+
+    static RUHungry load(Path menuFile, Path stockFile, int ledger) {
+        RUHungry restaurant = new RUHungry();
+        restaurant.menu(menuFile.toString());
+        restaurant.createStockHashTable(stockFile.toString());
+        restaurant.updatePriceAndProfit();
+        resetLedger(restaurant, ledger);
+        return restaurant;
+    }
+
+    // Replaces the ledger with length generated transactions
+    static void resetLedger(RUHungry restaurant, int length) {
+        restaurant.resetFrontNode();
+        Random random = new Random(SEED);
+        for (int i = 0; i < length; i++) {
+            restaurant.addTransactionNode(new TransactionData(TYPES[i % TYPES.length], "Item " + (i % 97),
+                    1 + random.nextInt(5), random.nextInt(2000) / 100.0 - 5, random.nextInt(4) != 0));
+        }
+    }
+
+    // Every dish name, or only the first dish of each category (the ones needing a substitute)
+    static String[] dishNames(RUHungry restaurant, boolean firstOnly) {
+        List<String> names = new ArrayList<>();
+        for (MenuNode category : restaurant.getMenu()) {
+            for (MenuNode ptr = category; ptr != null; ptr = ptr.getNextMenuNode()) {
+                if (!firstOnly || (ptr == category && ptr.getNextMenuNode() != null)) {
+                    names.add(ptr.getDish().getDishName());
+                }
+                if (firstOnly) {
+                    break;
+                }
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+}
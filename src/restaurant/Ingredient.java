@@ -38,5 +38,5 @@ public class Ingredient{
     public void updateStockLevel(int addAmount) { stockLevel += addAmount; }
 
     public double getCost() { return cost; }
-    public void setCost(int newPrice) { cost = newPrice; }
+    public void setCost(double newPrice) { cost = newPrice; }
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package restaurant;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This file is a histogram of non-negative long values (latencies in nanoseconds, substitution
+ * depths, probe lengths) laid out like HdrHistogram: values below 2 * SUB_BUCKETS are counted
+ * exactly, and every larger power-of-two range is split into SUB_BUCKETS equal buckets, so any
+ * recorded value is known to within 1 / SUB_BUCKETS (about 1.6%) of itself. Values above
+ * MAX_VALUE (about 4.9 hours in nanoseconds) are counted as MAX_VALUE.
+ *
+ * Recording is one atomic array increment and never allocates. The counts are striped: each
+ * thread increments the stripe picked by its ID, so threads recording at the same time mostly
+ * touch different cache lines. snapshot() adds the stripes together. As in HdrHistogram, the
+ * sum and mean are worked out from the buckets (each value taken as its bucket's midpoint)
+ * rather than kept exactly, which would take a second atomic add per value.
+ */
+
+public class LogHistogram {
+
+    public static final int SUB_BUCKET_BITS = 6;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static final long MAX_VALUE = (1L << 44) - 1;
+
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+
+    public LogHistogram() {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())) * 2 - 1);
+        stripes = new AtomicLongArray[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+        stripeMask = count - 1;
+    }
+
+    /*
+     * Bucket layout: with shift = max(0, (bit length of value) - SUB_BUCKET_BITS - 1), a value
+     * falls in bucket shift * SUB_BUCKETS + (value >>> shift). Shift 0 covers 0 to
+     * 2 * SUB_BUCKETS - 1 one value per bucket; each further shift covers the next power of two
+     * in SUB_BUCKETS buckets that are twice as wide as the ones before.
+     */
+    private static int index(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    // Smallest value that falls in bucket index
+    private static long lowestValue(int index) {
+        int shift = Math.max(0, index / SUB_BUCKETS - 1);
+        return (long) (index - shift * SUB_BUCKETS) << shift;
+    }
+
+    // Largest value that falls in bucket index
+    private static long highestValue(int index) {
+        int shift = Math.max(0, index / SUB_BUCKETS - 1);
+        return lowestValue(index) + (1L << shift) - 1;
+    }
+
+    public void record(long value) {
+        value = Math.min(Math.max(value, 0), MAX_VALUE);
+        stripes[(int) Thread.currentThread().getId() & stripeMask].getAndIncrement(index(value));
+    }
+
+    // Adds up every stripe; values recorded while this runs may or may not be included
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return new Snapshot(counts);
+    }
+
+    /*
+     * The counts of a histogram at one moment
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final double sum;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            double values = 0;
+            for (int i = 0; i < counts.length; i++) {
+                total += counts[i];
+                values += counts[i] * ((lowestValue(i) + highestValue(i)) / 2.0);
+            }
+            this.count = total;
+            this.sum = values;
+        }
+
+        public long getCount() { return count; }
+        public double getSum() { return sum; }
+
+        public double getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return highestValue(i);
+                }
+            }
+            return 0;
+        }
+
+        // Value at quantile q (0 to 1): no more than q of the recorded values are larger
+        public long getValueAtQuantile(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValue(i);
+                }
+            }
+            return getMax();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package restaurant;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Drives an OrderServer with many concurrent terminal connections and reports request
+ * latency percentiles. Every connection sends one request, waits for its reply, then
+ * sends the next, so latency is measured per round trip.
+ *
+ * Execution: java restaurant.OrderLoadGenerator [connections] [requestsPerConnection] [port]
+ * Without a port an OrderServer is started in the same JVM on a free port, taking all of the
+ * connections even on platform threads. Before JDK 21 every terminal here is a platform
+ * thread too, and a separate server refuses connections beyond its maxConnections.
+ */
+
+public class OrderLoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int perConnection = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        OrderServer embedded = null;
+        int port;
+        if (args.length > 2) {
+            port = Integer.parseInt(args[2]);
+        } else {
+            RUHungry restaurant = new RUHungry();
+            restaurant.menu("menu.in");
+            restaurant.createStockHashTable("stock.in");
+            restaurant.updatePriceAndProfit();
+            embedded = new OrderServer(restaurant, 0, connections);
+            port = embedded.getPort();
+        }
+
+        List<String> lines = requestLines();
+        long[][] latencies = new long[connections][];
+        CountDownLatch done = new CountDownLatch(connections);
+        ExecutorService terminals = OrderServer.newThreadPerTaskExecutor(connections);
+
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int id = c;
+            terminals.execute(() -> {
+                try {
+                    latencies[id] = runTerminal(port, lines, perConnection, new Random(id));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        terminals.shutdown();
+        if (embedded != null) {
+            embedded.close();
+        }
+
+        report(latencies, elapsed);
+    }
+
+    // A mix of orders for every dish on the menu plus some donations and restocks
+    private static List<String> requestLines() {
+        RUHungry restaurant = new RUHungry();
+        restaurant.menu("menu.in");
+        restaurant.createStockHashTable("stock.in");
+
+        List<String> lines = new ArrayList<>();
+        for (MenuNode category : restaurant.getMenu()) {
+            for (MenuNode ptr = category; ptr != null; ptr = ptr.getNextMenuNode()) {
+                lines.add("order 1 " + ptr.getDish().getDishName());
+            }
+        }
+        int orders = lines.size();
+        for (StockNode chain : restaurant.getStockVar()) {
+            for (StockNode ptr = chain; ptr != null && lines.size() < orders + orders / 5; ptr = ptr.getNextStockNode()) {
+                lines.add("restock 5 " + ptr.getIngredient().getName());
+                lines.add("donation 1 " + ptr.getIngredient().getName());
+            }
+        }
+        return lines;
+    }
+
+    private static long[] runTerminal(int port, List<String> lines, int requests, Random random) throws IOException {
+        long[] latencies = new long[requests];
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            for (int i = 0; i < requests; i++) {
+                String line = lines.get(random.nextInt(lines.size()));
+                long sent = System.nanoTime();
+                out.print(line);
+                out.print('\n');
+                out.flush();
+                if (in.readLine() == null) {
+                    throw new IOException("server closed the connection");
+                }
+                latencies[i] = System.nanoTime() - sent;
+            }
+        }
+        return latencies;
+    }
+
+    private static void report(long[][] latencies, long elapsed) {
+        int total = 0;
+        for (long[] terminal : latencies) {
+            total += terminal == null ? 0 : terminal.length;
+        }
+        long[] all = new long[total];
+        int n = 0;
+        for (long[] terminal : latencies) {
+            if (terminal != null) {
+                System.arraycopy(terminal, 0, all, n, terminal.length);
+                n += terminal.length;
+            }
+        }
+        Arrays.sort(all);
+
+        StdOut.printf("%d requests over %d connections in %.2f s (%.0f requests/s)\n",
+                total, latencies.length, elapsed / 1e9, total / (elapsed / 1e9));
+        if (all.length == 0) {
+            StdOut.println("No requests completed, so there are no latencies to report");
+            return;
+        }
+        String[] labels = { "p50", "p90", "p99", "p99.9", "max" };
+        double[] percentiles = { 50, 90, 99, 99.9, 100 };
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100.0 * all.length) - 1;
+            StdOut.printf("%-6s %10.1f us\n", labels[i], all[Math.max(index, 0)] / 1e3);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package restaurant;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This file is a local order-intake server: terminals connect over TCP and send transaction
+ * lines in the same format as the transaction input files, one per line:
+ *
+ *     order 2 Mac n Cheese Bites
+ *     donation 10 Lettuce
+ *     restock 25 Onions
+ *     profit
+ *
+ * Each transaction is answered with one line giving the outcome recorded in the transaction
+ * list, "ok <profit> <item>" or "failed <profit> <item>" (for orders, item is the dish that
+ * was served, which may be a substitute, or the last one tried). "profit" is answered with
+ * the current profit, and anything that cannot be run (including amounts below 1) with
+ * "error <reason>". All connections share one RUHungry running in concurrent mode.
+ *
+ * Each connection holds a thread for as long as it is open. On JDK 21 and later that is a
+ * virtual thread, and there is no limit on connections. JDK 11 to 20 are supported too, with
+ * platform threads from a pool of at most maxConnections (DEFAULT_MAX_CONNECTIONS unless
+ * given); a connection beyond that is answered "error server busy" and closed, rather than
+ * every terminal costing the server a thread stack. The project is built for JDK 11, so the
+ * virtual thread executor is looked up reflectively at run time; main() prints which kind
+ * of thread is in use.
+ *
+ * Execution: java restaurant.OrderServer [port] [maxConnections]
+ * (from the project folder, default port 5125)
+ */
+
+public class OrderServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 5125;
+    public static final int DEFAULT_MAX_CONNECTIONS = 256; // platform threads only
+
+    private final RUHungry restaurant;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final boolean virtualThreads;
+    private final Thread acceptor;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet(); // open connections, closed by close()
+    private volatile boolean closed;
+
+    // Starts listening on the loopback interface, port 0 picks a free port
+    public OrderServer(RUHungry restaurant, int port) throws IOException {
+        this(restaurant, port, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    // maxConnections limits open connections when there are no virtual threads (JDK 11 to 20)
+    public OrderServer(RUHungry restaurant, int port, int maxConnections) throws IOException {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be at least 1: " + maxConnections);
+        }
+        this.restaurant = restaurant;
+        if (!restaurant.isConcurrent()) {
+            restaurant.enableConcurrency();
+        }
+        serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        ExecutorService virtual = newVirtualThreadExecutor();
+        virtualThreads = virtual != null;
+        connections = virtualThreads ? virtual : newPlatformThreadPool(maxConnections);
+        acceptor = new Thread(this::acceptLoop, "order-server-acceptor");
+        acceptor.start();
+    }
+
+    public int getPort() { return serverSocket.getLocalPort(); }
+
+    public RUHungry getRestaurant() { return restaurant; }
+
+    // True when each connection runs on a virtual thread (JDK 21+)
+    public boolean usesVirtualThreads() { return virtualThreads; }
+
+    /*
+     * A virtual-thread-per-task executor when the JDK has one (21+), otherwise a pool of at
+     * most maxPlatformThreads platform threads that rejects tasks beyond that.
+     */
+    static ExecutorService newThreadPerTaskExecutor(int maxPlatformThreads) {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        return virtual != null ? virtual : newPlatformThreadPool(maxPlatformThreads);
+    }
+
+    // Looked up reflectively so the project still builds for JDK 11; null before JDK 21
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // Threads are started on demand up to max and dropped after a minute idle; execute() throws beyond max
+    private static ExecutorService newPlatformThreadPool(int max) {
+        return new ThreadPoolExecutor(0, max, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), task -> {
+            Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                clients.add(socket);
+                if (closed) {
+                    closeQuietly(socket); // accepted while close() was running
+                    return;
+                }
+                try {
+                    connections.execute(() -> serve(socket));
+                } catch (RejectedExecutionException e) {
+                    refuse(socket); // every platform thread is serving a connection
+                }
+            } catch (SocketException e) {
+                return; // closed
+            } catch (IOException e) {
+                System.err.println("OrderServer accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                out.print(handle(line));
+                out.print('\n');
+                if (!in.ready()) {
+                    out.flush(); // answer pipelined lines together, but never leave a reply waiting
+                }
+            }
+        } catch (IOException e) {
+            // The terminal hung up (or close() closed the socket), nothing to answer
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    // Runs one request line against the restaurant and returns the reply
+    public String handle(String line) {
+        if (line.trim().equalsIgnoreCase("profit")) {
+            return Double.toString(restaurant.profit());
+        }
+        TransactionRequest request;
+        try {
+            request = TransactionRequest.parse(line);
+        } catch (IllegalArgumentException e) {
+            return "error " + e.getMessage();
+        }
+        String type = request.getType();
+        TransactionData recorded;
+        if (type.equalsIgnoreCase("order")) {
+            recorded = restaurant.order(request.getItem(), request.getAmount());
+        } else if (type.equalsIgnoreCase("donation")) {
+            recorded = restaurant.donation(request.getItem(), request.getAmount());
+        } else if (type.equalsIgnoreCase("restock")) {
+            recorded = restaurant.restock(request.getItem(), request.getAmount());
+        } else {
+            return "error unknown transaction type: " + type;
+        }
+        if (recorded == null) {
+            return "error ingredient not found: " + request.getItem();
+        }
+        return (recorded.getSuccess() ? "ok " : "failed ") + recorded.getProfit() + " " + recorded.getItem();
+    }
+
+    // Stops accepting and closes every open connection
+    public void close() throws IOException {
+        closed = true;
+        try {
+            serverSocket.close();
+        } finally {
+            for (Socket socket : clients) {
+                closeQuietly(socket);
+            }
+            connections.shutdownNow();
+        }
+    }
+
+    private void refuse(Socket socket) {
+        try {
+            socket.getOutputStream().write("error server busy\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // the terminal is gone already
+        } finally {
+            clients.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int maxConnections = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_CONNECTIONS;
+
+        RUHungry restaurant = new RUHungry();
+        restaurant.menu("menu.in");
+        restaurant.createStockHashTable("stock.in");
+        restaurant.updatePriceAndProfit();
+
+        OrderServer server = new OrderServer(restaurant, port, maxConnections);
+        StdOut.println("Taking orders on port " + server.getPort() + (server.usesVirtualThreads()
+                ? " (a virtual thread per connection)"
+                : " (up to " + maxConnections + " connections on platform threads; virtual threads need JDK 21)"));
+    }
+}
@@ -0,0 +1,236 @@
+package restaurant;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This file is a large direct byte buffer in front of a channel (standard output or a file),
+ * used by StdOut's buffered mode and by ReportRenderer.
+ *
+ * It is an OutputStream, so StdOut's PrintWriter can write into it, and it also has append
+ * methods that encode characters, strings and numbers straight into the buffer without
+ * creating Strings. Bytes only reach the channel when the buffer fills or on flush()/close().
+ */
+
+public class OutputBuffer extends OutputStream {
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    // Appends go into this small array first and are copied into buffer in bulk,
+    // since plain array stores are cheaper than one ByteBuffer.put() per byte
+    private final byte[] chunk = new byte[8192];
+    private int count;
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    public OutputBuffer(WritableByteChannel channel) {
+        this(channel, DEFAULT_CAPACITY);
+    }
+
+    public OutputBuffer(WritableByteChannel channel, int capacity) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(capacity, chunk.length));
+    }
+
+    /*
+     * OutputStream methods
+     */
+
+    public void write(int b) throws IOException {
+        room(1);
+        chunk[count++] = (byte) b;
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        spill();
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    // Writes everything buffered to the channel
+    public void flush() throws IOException {
+        spill();
+        drain();
+    }
+
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            flush();
+            channel.close();
+        }
+    }
+
+    // Makes room for n more bytes in chunk (n is at most a few bytes)
+    private void room(int n) throws IOException {
+        if (count + n > chunk.length) {
+            spill();
+        }
+    }
+
+    // Moves chunk into buffer
+    private void spill() throws IOException {
+        if (buffer.remaining() < count) {
+            drain();
+        }
+        buffer.put(chunk, 0, count);
+        count = 0;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /*
+     * Append methods, UTF-8 encoded, without allocating
+     */
+
+    public OutputBuffer append(char c) throws IOException {
+        room(3);
+        if (c < 0x80) {
+            chunk[count++] = (byte) c;
+        } else if (c < 0x800) {
+            chunk[count++] = (byte) (0xC0 | (c >> 6));
+            chunk[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (!Character.isSurrogate(c)) {
+            chunk[count++] = (byte) (0xE0 | (c >> 12));
+            chunk[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            chunk[count++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+            chunk[count++] = (byte) '?'; // lone surrogate, as String.getBytes() would write it
+        }
+        return this;
+    }
+
+    public OutputBuffer append(CharSequence s) throws IOException {
+        if (s == null) {
+            return append("null");
+        }
+        int length = s.length();
+        int i = 0;
+        if (length <= chunk.length) {
+            // Fast path: copy ASCII characters with no room check per character
+            room(length);
+            while (i < length) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                chunk[count++] = (byte) c;
+                i++;
+            }
+        }
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (count == chunk.length) {
+                    spill();
+                }
+                chunk[count++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+            } else {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    // Appends bytes that are already encoded, e.g. a report's fixed labels
+    public OutputBuffer append(byte[] bytes) throws IOException {
+        if (bytes.length > chunk.length - count) {
+            spill();
+            if (bytes.length > chunk.length) {
+                write(bytes, 0, bytes.length);
+                return this;
+            }
+        }
+        System.arraycopy(bytes, 0, chunk, count, bytes.length);
+        count += bytes.length;
+        return this;
+    }
+
+    private void appendCodePoint(int codePoint) throws IOException {
+        room(4);
+        chunk[count++] = (byte) (0xF0 | (codePoint >> 18));
+        chunk[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        chunk[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        chunk[count++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+
+    public OutputBuffer append(boolean b) throws IOException {
+        return append(b ? "true" : "false");
+    }
+
+    // Same digits as Long.toString(value)
+    public OutputBuffer append(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            return append("-9223372036854775808");
+        }
+        room(20);
+        if (value < 0) {
+            chunk[count++] = '-';
+            value = -value;
+        }
+        int length = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            length++;
+        }
+        for (int i = count + length - 1; i >= count; i--) {
+            chunk[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += length;
+        return this;
+    }
+
+    /*
+     * Same text as String.valueOf(Math.round(value * 100.0) / 100.0), the way Driver prints
+     * money. Amounts below ten million are written from the whole number of cents; larger
+     * ones, which Double.toString() writes in scientific notation, go through it.
+     */
+    public OutputBuffer appendCents(double value) throws IOException {
+        long cents = Math.round(value * 100.0);
+        if (Math.abs(cents) >= 1_000_000_000L) {
+            return append(String.valueOf(cents / 100.0));
+        }
+        if (cents < 0) {
+            append('-');
+            cents = -cents;
+        }
+        append(cents / 100);
+        append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            append('0');
+            if (fraction != 0) {
+                append(fraction);
+            }
+        } else {
+            append(fraction % 10 == 0 ? fraction / 10 : fraction);
+        }
+        return this;
+    }
+
+    public OutputBuffer newline() throws IOException {
+        return append(NEWLINE);
+    }
+}
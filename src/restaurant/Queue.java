@@ -6,7 +6,7 @@ package restaurant;
  *  Dependencies: StdIn.java StdOut.java
  *  Data files:   https://algs4.cs.princeton.edu/13stacks/tobe.txt
  *
- *  A generic queue, implemented using a linked list.
+ *  A generic queue, implemented using a resizing circular array.
  *
  *  % java Queue < tobe.txt
  *  to be or not to be (2 left on queue)
@@ -24,12 +24,11 @@ import java.util.NoSuchElementException;
  *  testing if the queue is empty, and iterating through
  *  the items in FIFO order.
  *  <p>
- *  This implementation uses a singly linked list with a static nested class for
- *  linked-list nodes. See {@link LinkedQueue} for the version from the
- *  textbook that uses a non-static nested class.
- *  See {@link ResizingArrayQueue} for a version that uses a resizing array.
- *  The <em>enqueue</em>, <em>dequeue</em>, <em>peek</em>, <em>size</em>, and <em>is-empty</em>
- *  operations all take constant time in the worst case.
+ *  This implementation uses a circular array that doubles when full and halves
+ *  when a quarter full, so enqueueing does not allocate a node per item.
+ *  The <em>peek</em>, <em>size</em>, and <em>is-empty</em> operations take constant time
+ *  in the worst case; <em>enqueue</em> and <em>dequeue</em> take constant amortized time.
+ *  <em>enqueueAll</em> and <em>drainTo</em> move many items with one resize and bulk copies.
  *  <p>
  *  For additional documentation, see <a href="https://algs4.cs.princeton.edu/13stacks">Section 1.3</a> of
  *  <i>Algorithms, 4th Edition</i> by Robert Sedgewick and Kevin Wayne.
@@ -40,23 +39,22 @@ import java.util.NoSuchElementException;
  *  @param <Item> the generic type of each item in this queue
  */
 public class Queue<Item> implements Iterable<Item> {
-    private Node<Item> first;    // beginning of queue
-    private Node<Item> last;     // end of queue
-    private int n;               // number of elements on queue
-
-    // helper linked list class
-    private static class Node<Item> {
-        private Item item;
-        private Node<Item> next;
-    }
+    private static final int INIT_CAPACITY = 8;
+
+    private Item[] q;       // queue elements
+    private int n;          // number of elements on queue
+    private int first;      // index of first element of queue
+    private int last;       // index of next available slot
 
     /**
      * Initializes an empty queue.
      */
+    @SuppressWarnings("unchecked")
     public Queue() {
-        first = null;
-        last  = null;
+        q = (Item[]) new Object[INIT_CAPACITY];
         n = 0;
+        first = 0;
+        last = 0;
     }
 
     /**
@@ -65,7 +63,7 @@ public class Queue<Item> implements Iterable<Item> {
      * @return {@code true} if this queue is empty; {@code false} otherwise
      */
     public boolean isEmpty() {
-        return first == null;
+        return n == 0;
     }
 
     /**
@@ -77,6 +75,24 @@ public class Queue<Item> implements Iterable<Item> {
         return n;
     }
 
+    // resize the underlying array, moving the items to the front
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        assert capacity >= n;
+        Item[] copy = (Item[]) new Object[capacity];
+        copyTo(copy, 0, n);
+        q = copy;
+        first = 0;
+        last  = (n == capacity) ? 0 : n;
+    }
+
+    // copies the first count items, in FIFO order, into dest starting at destPos
+    private void copyTo(Object[] dest, int destPos, int count) {
+        int head = Math.min(count, q.length - first);
+        System.arraycopy(q, first, dest, destPos, head);
+        System.arraycopy(q, 0, dest, destPos + head, count - head);
+    }
+
     /**
      * Returns the item least recently added to this queue.
      *
@@ -84,7 +100,8 @@ public class Queue<Item> implements Iterable<Item> {
      * @throws NoSuchElementException if this queue is empty
      */
     public Item peek() {
-        return first.item;
+        if (isEmpty()) throw new NoSuchElementException("Queue underflow");
+        return q[first];
     }
 
     /**
@@ -93,15 +110,44 @@ public class Queue<Item> implements Iterable<Item> {
      * @param  item the item to add
      */
     public void enqueue(Item item) {
-        Node<Item> oldlast = last;
-        last = new Node<Item>();
-        last.item = item;
-        last.next = null;
-        if (isEmpty()) first = last;
-        else           oldlast.next = last;
+        // double size of array if necessary
+        if (n == q.length) resize(2*q.length);
+        q[last++] = item;                        // add item
+        if (last == q.length) last = 0;          // wrap-around
         n++;
     }
 
+    /**
+     * Adds every item of {@code items} to this queue, in iteration order.
+     * When {@code items} is another {@code Queue}, the array grows at most once
+     * and the items are copied in bulk.
+     *
+     * @param  items the items to add
+     */
+    @SuppressWarnings("unchecked")
+    public void enqueueAll(Iterable<? extends Item> items) {
+        if (!(items instanceof Queue)) {
+            for (Item item : items) enqueue(item);
+            return;
+        }
+        Queue<? extends Item> other = (Queue<? extends Item>) items;
+        int count = other.n;
+        if (n + count > q.length) {
+            int capacity = q.length;
+            while (capacity < n + count) capacity *= 2;
+            resize(capacity);
+        }
+        // copy the other queue's items into the free slots after last, in FIFO order
+        Object[] src = other.q;
+        int from = other.first;
+        for (int i = 0; i < count; i++) {
+            q[last++] = (Item) src[from++];
+            if (last == q.length) last = 0;
+            if (from == src.length) from = 0;
+        }
+        n += count;
+    }
+
     /**
      * Removes and returns the item on this queue that was least recently added.
      *
@@ -110,13 +156,58 @@ public class Queue<Item> implements Iterable<Item> {
      */
     public Item dequeue() {
         if (isEmpty()) throw new NoSuchElementException("Queue underflow");
-        Item item = first.item;
-        first = first.next;
+        Item item = q[first];
+        q[first] = null;                            // to avoid loitering
         n--;
-        if (isEmpty()) last = null;   // to avoid loitering
+        first++;
+        if (first == q.length) first = 0;           // wrap-around
+        // shrink size of array if necessary
+        if (n > 0 && n == q.length/4 && q.length > INIT_CAPACITY) resize(q.length/2);
         return item;
     }
 
+    /**
+     * Removes every item from this queue and adds them, in FIFO order, to {@code target}.
+     *
+     * @param  target the queue to move the items to
+     * @return the number of items moved
+     * @throws IllegalArgumentException if {@code target} is this queue
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(Queue<? super Item> target) {
+        if (target == this) throw new IllegalArgumentException("cannot drain a queue into itself");
+        int count = n;
+        ((Queue<Item>) target).enqueueAll(this);
+        clear();
+        return count;
+    }
+
+    /**
+     * Removes every item from this queue and adds them, in FIFO order, to {@code target}.
+     *
+     * @param  target the collection to move the items to
+     * @return the number of items moved
+     */
+    public int drainTo(java.util.Collection<? super Item> target) {
+        int count = n;
+        for (int i = 0; i < count; i++) {
+            target.add(q[(first + i) % q.length]);
+        }
+        clear();
+        return count;
+    }
+
+    /**
+     * Removes every item from this queue.
+     */
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        q = (Item[]) new Object[INIT_CAPACITY];
+        n = 0;
+        first = 0;
+        last = 0;
+    }
+
     /**
      * Returns a string representation of this queue.
      *
@@ -137,25 +228,21 @@ public class Queue<Item> implements Iterable<Item> {
      * @return an iterator that iterates over the items in this queue in FIFO order
      */
     public Iterator<Item> iterator()  {
-        return new LinkedIterator(first);
+        return new ArrayIterator();
     }
 
-    // a linked-list iterator
-    private class LinkedIterator implements Iterator<Item> {
-        private Node<Item> current;
-
-        public LinkedIterator(Node<Item> first) {
-            current = first;
-        }
+    // an array iterator, from first to last-1
+    private class ArrayIterator implements Iterator<Item> {
+        private int i = 0;
 
         public boolean hasNext() {
-            return current != null;
+            return i < n;
         }
 
         public Item next() {
             if (!hasNext()) throw new NoSuchElementException();
-            Item item = current.item;
-            current = current.next;
+            Item item = q[(i + first) % q.length];
+            i++;
             return item;
         }
     }
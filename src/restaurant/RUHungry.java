@@ -2,8 +2,17 @@
 
 package restaurant;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Lock;
 
 /**
  * RUHungry is a fictitious restaurant.
@@ -26,13 +35,46 @@ public class RUHungry {
     // Menu: two parallel arrays. The index in one corresponds to the same index in the other.
     private String[] categoryVar; // array where containing the name of menu categories (e.g. Appetizer, Dessert).
     private MenuNode[] menuVar;   // array of lists of MenuNodes where each index is a category.
+    private HashMap<String, MenuNode> dishIndex;     // lowercased dish name -> MenuNode, built by menu()
+    private HashMap<String, Integer>  categoryIndex; // lowercased category name -> index in categoryVar/menuVar
+    private HashMap<Integer, ArrayList<Dish>> dishesByIngredient; // ingredient ID -> dishes that use it
+    private int[] categorySize;       // number of dishes in the list at the same index of menuVar
+    private int dishCount;            // number of dishes on the menu, Dish ordinals run 0..dishCount-1
+    private int[] dishServings;       // cached maxServings() of each dish, indexed by Dish ordinal
+    private boolean[] dishServingsStale; // true where dishServings must be recomputed from stock
+    private SubstitutionPolicy substitutionPolicy; // which dishes order() tries when a dish is unavailable
+    private double[] categoryMarkup; // price = cost * markup for every dish in the category at the same index
+    private RUHungry menuSource;     // the RUHungry whose menu shareMenu() shares, null for a menu of its own
+    private static final double DEFAULT_MARKUP = 1.2;
 
     // Stock: hashtable using chaining to resolve collisions.
     private StockNode[] stockVar;  // array of linked lists of StockNodes (use hashfunction to organize Nodes: id % stockVarSize)
     private int stockVarSize;
+    private int stockCount;            // number of StockNodes currently in the stock hashtable
+    private double stockLoadFactor;    // stockCount / stockVarSize that triggers a resize, 0 disables resizing
+    private StockNode[] oldStockVar;   // table being drained into stockVar while a resize is in progress
+    private int rehashIndex;           // next chain of oldStockVar to move
+    private int rehashChainsPerStep;   // chains moved per step, enough to finish before the next resize
+    private static final int REHASH_CHAINS_PER_STEP = 4;
+    private HashMap<String, StockNode> stockNameIndex; // lowercased ingredient name -> StockNode in stockVar
 
     // Transactions: orders, donations, restock transactions are recorded
     private TransactionNode transactionVar; // refers to the first front node in linked list
+    private TransactionNode transactionTail; // refers to the last node in the list, for O(1) appends
+    private TransactionLog transactionLog;   // the ledger when it is columnar, see setColumnarLedger()
+    private double runningProfit;   // running sum of every transaction's profit, in ledger order
+    private double orderProfit;     // running sum for "order" transactions
+    private double donationProfit;  // running sum for "donation" transactions
+    private double restockProfit;   // running sum for "restock" transactions
+
+    // Concurrent mode: null while single-threaded, see enableConcurrency()
+    private volatile StockLocks stockLocks;
+
+    // Write-ahead log of stock changes and transactions, null when not logging, see TransactionWal
+    private volatile TransactionWal wal;
+
+    // Counters and latency histograms, null when not collecting, see EngineMetrics
+    private volatile EngineMetrics metrics;
 
     // Queue keeps track of people who've left the restaurant
     private Queue<People> leftQueueVar;
@@ -41,6 +83,8 @@ public class RUHungry {
     private People[] tables;        // array for people who are currently sitting
     private int[][]  tablesInfo;    // 2-D integer array where the first row contains how many seats there are at each table (each index)
     // and the second row contains "0" or "1", where 1 is the table is not available and 0 the opposite
+    private TreeSet<Long> freeTables; // free tables keyed by (seats << 32 | table index), smallest fit first
+    private Queue<People> seatedQueue; // parties currently at a table, longest seated first
 
     /*
      * Default constructor
@@ -48,12 +92,38 @@ public class RUHungry {
     public RUHungry () {
         categoryVar    = null;
         menuVar        = null;
+        dishIndex      = null;
+        categoryIndex  = null;
+        dishesByIngredient = null;
+        categoryMarkup = null;
+        menuSource     = null;
+        categorySize   = null;
+        dishCount      = 0;
+        dishServings   = null;
+        dishServingsStale = null;
+        substitutionPolicy = SubstitutionPolicy.NEXT_IN_LIST;
         stockVar       = null;
         stockVarSize   = 0;
+        stockCount     = 0;
+        stockLoadFactor = 0;
+        oldStockVar    = null;
+        rehashIndex    = 0;
+        rehashChainsPerStep = REHASH_CHAINS_PER_STEP;
+        stockNameIndex = null;
         transactionVar = null;
+        transactionTail = null;
+        transactionLog = null;
+        runningProfit  = 0.0;
+        orderProfit    = 0.0;
+        donationProfit = 0.0;
+        restockProfit  = 0.0;
+        stockLocks     = null;
+        wal            = null;
         leftQueueVar   = null;
         tablesInfo     = null;
         tables         = null;
+        freeTables     = null;
+        seatedQueue    = null;
     }
 
     /*
@@ -61,74 +131,242 @@ public class RUHungry {
      */
     public MenuNode[] getMenu() { return menuVar; }
     public String[] getCategoryArray() { return categoryVar;}
-    public StockNode[] getStockVar() { return stockVar; }
+    public StockNode[] getStockVar() {
+        // Callers walk the chains directly, so hand them a fully rehashed table
+        if (oldStockVar != null) {
+            StockLocks locks = lockStructure(true);
+            try {
+                while (oldStockVar != null) {
+                    rehashStep();
+                }
+            } finally {
+                unlockStructure(locks, true);
+            }
+        }
+        return stockVar;
+    }
     public TransactionNode getFrontTransactionNode() { return transactionVar; }
-    public TransactionNode resetFrontNode() {return transactionVar = null;} // method to reset the transactions for a new day
+    public TransactionNode getLastTransactionNode() {
+        StockLocks locks = lockLedger();
+        try {
+            catchUpTail();
+            return transactionTail;
+        } finally {
+            unlockLedger(locks);
+        }
+    }
+    public TransactionNode resetFrontNode() { // method to reset the transactions for a new day
+        TransactionWal log = wal;
+        if (log != null) {
+            log.appendReset();
+        }
+        runningProfit = orderProfit = donationProfit = restockProfit = 0.0;
+        if (transactionLog != null) {
+            transactionLog.clear();
+        }
+        transactionTail = null;
+        return transactionVar = null;
+    }
     public Queue<People> getLeftQueueVar() { return leftQueueVar; }
     public int[][] getTablesInfo() { return tablesInfo; }
+    public TransactionLog getTransactionLog() { return transactionLog; } // null unless the ledger is columnar
+    public TransactionWal getWal() { return wal; }
+    public void setWal(TransactionWal wal) { this.wal = wal; } // null stops logging
+    public EngineMetrics getMetrics() { return metrics; }
+    public void setMetrics(EngineMetrics metrics) { this.metrics = metrics; } // null stops collecting
 
     /*
      * Menu methods
      */
     public void menu(String inputFile) {
-        StdIn.setFile(inputFile);
-        int numCategories = StdIn.readInt(); // Read number of categories
+        menu(ByteTokenizer.openFile(inputFile));
+    }
 
-        categoryVar = new String[numCategories];
-        menuVar = new MenuNode[numCategories];
+    // Reads the menu from in, which no other thread may be reading
+    public void menu(ByteTokenizer in) {
+        EngineMetrics m = metrics;
+        long start = System.nanoTime();
+        readMenu(in).run();
+        if (m != null) {
+            m.recordMenuLoad(start);
+        }
+    }
+
+    /*
+     * Parses a menu file without touching this RUHungry and returns the step that installs it,
+     * so several files can be parsed on different threads (see loadConcurrently()).
+     */
+    private Runnable readMenu(ByteTokenizer in) {
+        int numCategories = in.readInt(); // Read number of categories
+
+        String[] categories = new String[numCategories];
+        MenuNode[] menu = new MenuNode[numCategories];
 
         for (int i = 0; i < numCategories; i++) {
-            StdIn.readLine(); // Read and discard the newline character after the number of categories or dishes
-            categoryVar[i] = StdIn.readLine(); // Read category name
+            in.readLine(); // Read and discard the newline character after the number of categories or dishes
+            categories[i] = in.readLine(); // Read category name
 
-            int numDishes = StdIn.readInt(); // Read number of dishes in this category
+            int numDishes = in.readInt(); // Read number of dishes in this category
             MenuNode categoryHead = null;
 
             for (int j = 0; j < numDishes; j++) {
-                StdIn.readLine(); // Read and discard the newline character after the number of ingredients
-                String dishName = StdIn.readLine(); // Read dish name
+                in.readLine(); // Read and discard the newline character after the number of ingredients
+                String dishName = in.readLine(); // Read dish name
 
-                int numIngredients = StdIn.readInt(); // Read number of ingredients for this dish
+                int numIngredients = in.readInt(); // Read number of ingredients for this dish
                 int[] ingredientIDs = new int[numIngredients];
                 for (int k = 0; k < numIngredients; k++) {
-                    ingredientIDs[k] = StdIn.readInt(); // Read each ingredient ID
+                    ingredientIDs[k] = in.readInt(); // Read each ingredient ID
                 }
 
-                Dish dish = new Dish(categoryVar[i], dishName, ingredientIDs);
+                Dish dish = new Dish(categories[i], dishName, ingredientIDs);
                 categoryHead = new MenuNode(dish, categoryHead); // Prepend dish to the linked list
             }
 
-            menuVar[i] = categoryHead; // Assign the head of the linked list to the category index
+            menu[i] = categoryHead; // Assign the head of the linked list to the category index
         }
+        return () -> loadMenu(categories, menu, null);
     }
 
-    public MenuNode findDish ( String dishName ) {
-        MenuNode menuNode = null;
-        // Search all categories since we don't know which category dishName is at
-        for ( int category = 0; category < menuVar.length; category++ ) {
+    /*
+     * Installs a menu built somewhere other than menu(), e.g. by RestaurantSnapshot: one
+     * category name and one linked list of dishes per index, plus the markup of each category
+     * (null for the default). Prices already set on the Dishes are kept.
+     */
+    public void loadMenu(String[] categories, MenuNode[] menu, double[] markups) {
+        menuSource = null;
+        categoryVar = categories;
+        menuVar = menu;
+        indexMenu(markups);
+    }
 
-            MenuNode ptr = menuVar[category]; // set ptr at the front (first menuNode)
+    // Builds the lookup indexes, markups and availability cache for categoryVar/menuVar
+    private void indexMenu(double[] markups) {
+        int numCategories = categoryVar.length;
+        dishIndex = new HashMap<>();
+        categoryIndex = new HashMap<>();
+        dishesByIngredient = new HashMap<>();
+        categorySize = new int[numCategories];
+        if (markups != null) {
+            categoryMarkup = Arrays.copyOf(markups, numCategories);
+        } else {
+            categoryMarkup = new double[numCategories];
+            Arrays.fill(categoryMarkup, DEFAULT_MARKUP);
+        }
+        dishCount = 0;
 
-            while ( ptr != null ) { // while loop that searches the LL of the category to find the itemOrdered
-                if ( ptr.getDish().getDishName().equals(dishName) ) {
-                    return ptr;
-                } else{
-                    ptr = ptr.getNextMenuNode();
-                }
+        for (int i = 0; i < numCategories; i++) {
+            categoryIndex.putIfAbsent(indexKey(categoryVar[i]), i);
+
+            // Index the dishes in list order so the first match is the same one a linear scan would find
+            for (MenuNode ptr = menuVar[i]; ptr != null; ptr = ptr.getNextMenuNode()) {
+                Dish dish = ptr.getDish();
+                dish.setOrdinal(dishCount++);
+                categorySize[i]++;
+                dishIndex.putIfAbsent(indexKey(dish.getDishName()), ptr);
+                indexIngredients(dish);
             }
         }
-        return menuNode;
+        dishServings = new int[dishCount];
+        dishServingsStale = new boolean[dishCount];
+        Arrays.fill(dishServingsStale, true);
     }
 
-    public int findCategoryIndex ( String category ) {
-        int index = 0;
-        for ( int i = 0; i < categoryVar.length; i++ ){
-            if ( category.equalsIgnoreCase(categoryVar[i]) ) {
-                index = i;
-                break;
+    // Adds dish to the reverse index once for every distinct ingredient it uses
+    private void indexIngredients(Dish dish) {
+        for (int ingredientID : dish.getStockID()) {
+            ArrayList<Dish> dishes = dishesByIngredient.computeIfAbsent(ingredientID, id -> new ArrayList<>());
+            if (dishes.isEmpty() || dishes.get(dishes.size() - 1) != dish) {
+                dishes.add(dish);
+            }
+        }
+    }
+
+    // Dishes that use ingredientID, empty if none do
+    public List<Dish> getDishesUsing(int ingredientID) {
+        ArrayList<Dish> dishes = dishesByIngredient.get(ingredientID);
+        return dishes == null ? Collections.emptyList() : Collections.unmodifiableList(dishes);
+    }
+
+    /*
+     * Uses the menu already loaded by another RUHungry instead of reading one, for running
+     * several locations off one menu. The Dishes, MenuNodes and markups are shared, so prices
+     * come only from source, priced against source's stock: updatePriceAndProfit(),
+     * updateIngredientCost(), repriceDishesUsing() and setMarkup() throw
+     * IllegalStateException on this RUHungry. Stock, availability and the transaction list
+     * stay separate per RUHungry.
+     */
+    public void shareMenu(RUHungry source) {
+        menuSource = source.menuSource != null ? source.menuSource : source;
+        categoryVar = source.categoryVar;
+        menuVar = source.menuVar;
+        dishIndex = source.dishIndex;
+        categoryIndex = source.categoryIndex;
+        dishesByIngredient = source.dishesByIngredient;
+        categoryMarkup = source.categoryMarkup;
+        categorySize = source.categorySize;
+        dishCount = source.dishCount;
+        dishServings = new int[dishCount];
+        dishServingsStale = new boolean[dishCount];
+        Arrays.fill(dishServingsStale, true);
+    }
+
+    /*
+     * Parallel startup: parses the menu, stock and (unless tablesFile is null) tables files
+     * on separate threads, installs them on the calling thread once all three are parsed,
+     * then prices the menu. Ends in the same state as menu(), createStockHashTable(),
+     * createTables() and updatePriceAndProfit() called one after another. Metrics record each
+     * file's load time from the start of the call until that file is installed.
+     */
+    public void loadConcurrently(String menuFile, String stockFile, String tablesFile) {
+        EngineMetrics m = metrics;
+        long start = System.nanoTime();
+        CompletableFuture<Runnable> menu = CompletableFuture.supplyAsync(() -> readMenu(ByteTokenizer.openFile(menuFile)));
+        CompletableFuture<Runnable> stock = CompletableFuture.supplyAsync(() -> readStock(ByteTokenizer.openFile(stockFile)));
+        CompletableFuture<Runnable> tables = tablesFile == null ? null
+                : CompletableFuture.supplyAsync(() -> readTables(ByteTokenizer.openFile(tablesFile)));
+        try {
+            menu.join().run();
+            if (m != null) {
+                m.recordMenuLoad(start);
+            }
+            stock.join().run();
+            if (m != null) {
+                m.recordStockLoad(start);
+            }
+            if (tables != null) {
+                tables.join().run();
+                if (m != null) {
+                    m.recordTablesLoad(start);
+                }
             }
+        } catch (CompletionException e) {
+            // Rethrow what the parsing thread threw, e.g. a missing file or a malformed number
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
         }
-        return index;
+        updatePriceAndProfit();
+    }
+
+    // Normalises names used as keys in the menu and stock name indexes
+    private static String indexKey(String name) {
+        return name.toLowerCase(Locale.US);
+    }
+
+    public MenuNode findDish ( String dishName ) {
+        if ( dishName == null ) {
+            return null;
+        }
+        // dishIndex is built by menu(), so lookups no longer scan every category
+        return dishIndex.get(indexKey(dishName));
+    }
+
+    public int findCategoryIndex ( String category ) {
+        // Unknown categories fall back to index 0, as the original linear search did
+        Integer index = categoryIndex.get(indexKey(category));
+        return index == null ? 0 : index;
     }
 
     /*
@@ -136,6 +374,22 @@ public class RUHungry {
      */
 
     public void addStockNode(StockNode newNode) {
+        StockLocks locks = lockStructure(true);
+        try {
+            insertStockNode(newNode);
+            TransactionWal log = wal;
+            if (log != null) {
+                log.appendAddStock(newNode.getIngredient());
+            }
+        } finally {
+            unlockStructure(locks, true);
+        }
+    }
+
+    private void insertStockNode(StockNode newNode) {
+        // Move a few chains of an in-progress resize before touching the table
+        rehashStep();
+
         // Retrieve the ingredientID from the StockNode parameter
         int ingredientID = newNode.getIngredient().getID();
 
@@ -145,44 +399,88 @@ public class RUHungry {
         // Check if there's already a linked list at the specified index
         if (stockVar[index] == null) {
             // If there's no linked list, create a new one with the stockNode as the head
+            newNode.setNextStockNode(null);
             stockVar[index] = newNode;
         } else {
             // If there's an existing linked list, add the stockNode to the front
             newNode.setNextStockNode(stockVar[index]);
             stockVar[index] = newNode;
         }
+        stockNameIndex.put(indexKey(newNode.getIngredient().getName()), newNode);
+        stockCount++;
+        invalidateAvailability(ingredientID);
+
+        if (stockLoadFactor > 0 && stockCount > stockLoadFactor * stockVarSize) {
+            growStockVar();
+        }
     }
 
     public void deleteStockNode(String ingredientName) {
-        boolean found = false;
-        for (int i = 0; i < stockVar.length; i++) {
-            StockNode previous = null;
-            StockNode current = stockVar[i];
-            while (current != null) {
-                if (current.getIngredient().getName().equals(ingredientName)) {
-                    found = true;
-                    if (previous == null) {
-                        // Node to delete is the head of the list
-                        stockVar[i] = current.getNextStockNode();
-                    } else {
-                        // Node to delete is not the head
-                        previous.setNextStockNode(current.getNextStockNode());
-                    }
-                    break;
-                }
-                previous = current;
-                current = current.getNextStockNode();
+        StockLocks locks = lockStructure(true);
+        try {
+            TransactionWal log = wal;
+            if (removeStockNode(ingredientName) && log != null) {
+                log.appendDeleteStock(ingredientName);
             }
-            if (found) break;
+        } finally {
+            unlockStructure(locks, true);
         }
-        if (!found) {
+    }
+
+    // Returns false if there is no such ingredient
+    private boolean removeStockNode(String ingredientName) {
+        StockNode target = findStockNodeExact(ingredientName);
+        if (target == null) {
             System.out.println("Ingredient not found in stock.");
+            return false;
         }
+
+        // The name index tells us which node to remove, its ID tells us which chain it is on.
+        // While a resize is in progress the node may still be on a chain of the old table.
+        if (!unlinkStockNode(stockVar, target) && oldStockVar != null) {
+            unlinkStockNode(oldStockVar, target);
+        }
+        stockNameIndex.remove(indexKey(ingredientName));
+        stockCount--;
+        invalidateAvailability(target.getIngredient().getID());
+        rehashStep();
+        return true;
+    }
+
+    // Removes target from its chain in table, returns false if it is not on that chain
+    private boolean unlinkStockNode(StockNode[] table, StockNode target) {
+        int i = target.getIngredient().getID() % table.length;
+        StockNode previous = null;
+        StockNode current = table[i];
+        while (current != null && current != target) {
+            previous = current;
+            current = current.getNextStockNode();
+        }
+        if (current == null) {
+            return false;
+        }
+        if (previous == null) {
+            // Node to delete is the head of the list
+            table[i] = current.getNextStockNode();
+        } else {
+            // Node to delete is not the head
+            previous.setNextStockNode(current.getNextStockNode());
+        }
+        return true;
     }
 
     public StockNode findStockNode(int ingredientID) {
-        int index = ingredientID % stockVar.length;
-        StockNode current = stockVar[index];
+        StockNode found = findStockNode(stockVar, ingredientID);
+        if (found == null && oldStockVar != null) {
+            // Not migrated yet, so it is still on its chain in the old table
+            found = findStockNode(oldStockVar, ingredientID);
+        }
+        return found;
+    }
+
+    private static StockNode findStockNode(StockNode[] table, int ingredientID) {
+        int index = ingredientID % table.length;
+        StockNode current = table[index];
         while (current != null) {
             if (current.getIngredient().getID() == ingredientID) {
                 return current;
@@ -192,93 +490,324 @@ public class RUHungry {
         return null;
     }
 
-    public StockNode findStockNode(String ingredientName) {
-        for (StockNode stockNode : stockVar) {
-            StockNode ptr = stockNode;
-            while (ptr != null) {
-                if (ptr.getIngredient().getName().equalsIgnoreCase(ingredientName)) {
-                    return ptr;
+    // Chain nodes findStockNode(int) visits looking for ingredientID
+    private int probeLength(int ingredientID) {
+        int probes = 0;
+        for (StockNode[] table : new StockNode[][] {stockVar, oldStockVar}) {
+            if (table == null) {
+                continue;
+            }
+            for (StockNode ptr = table[ingredientID % table.length]; ptr != null; ptr = ptr.getNextStockNode()) {
+                probes++;
+                if (ptr.getIngredient().getID() == ingredientID) {
+                    return probes;
                 }
-                ptr = ptr.getNextStockNode();
             }
         }
-        return null; // Return null if no matching node is found
+        return probes;
     }
 
-    public void updateStock(String ingredientName, int ingredientID, int stockAmountToAdd) {
-        StockNode nodeToUpdate = null;
-        if (ingredientName == null && ingredientID != -1) {
-            nodeToUpdate = findStockNode(ingredientID);
-        } else if (ingredientID == -1 && ingredientName != null) {
-            for (int i = 0; i < stockVar.length; i++) {
-                StockNode current = stockVar[i];
-                while (current != null) {
-                    if (current.getIngredient().getName().equals(ingredientName)) {
-                        nodeToUpdate = current;
-                        break;
-                    }
-                    current = current.getNextStockNode();
+    /*
+     * Stockroom resizing: once stockCount passes stockLoadFactor * stockVarSize, stockVar is
+     * replaced by a table of roughly twice the size (next prime) and the old chains are moved
+     * over a few at a time by rehashStep(), so no single call pays for the whole rehash. Every
+     * insert takes a step, and each step moves enough chains that the old table is drained
+     * before enough inserts have happened to trigger the next resize.
+     */
+
+    // Sets the load factor that triggers a resize, 0 (the default) keeps the size read from the input file
+    public void setStockLoadFactor(double loadFactor) {
+        if (loadFactor < 0) {
+            throw new IllegalArgumentException("load factor must be non-negative: " + loadFactor);
+        }
+        stockLoadFactor = loadFactor;
+    }
+
+    public double getStockLoadFactor() { return stockLoadFactor; }
+
+    private void growStockVar() {
+        // Only reached with a resize still running if the load factor was lowered during it;
+        // finish it so there are never three tables
+        while (oldStockVar != null) {
+            rehashStep();
+        }
+        oldStockVar = stockVar;
+        rehashIndex = 0;
+        stockVarSize = nextPrime(2 * stockVarSize + 1);
+        stockVar = new StockNode[stockVarSize];
+
+        // Inserts left before the next resize triggers; each one takes a step, and at most
+        // min(old length, stockCount) chains have anything to move
+        long headroom = Math.max(1, (long) (stockLoadFactor * stockVarSize) - stockCount);
+        long chains = Math.min(oldStockVar.length, stockCount);
+        rehashChainsPerStep = (int) Math.max(REHASH_CHAINS_PER_STEP, (chains + headroom - 1) / headroom);
+    }
+
+    private void rehashStep() {
+        if (oldStockVar == null) {
+            return;
+        }
+        for (int moved = 0; moved < rehashChainsPerStep && rehashIndex < oldStockVar.length; rehashIndex++) {
+            StockNode current = oldStockVar[rehashIndex];
+            oldStockVar[rehashIndex] = null;
+            if (current != null) {
+                moved++;
+            }
+            while (current != null) {
+                StockNode next = current.getNextStockNode();
+                int index = current.getIngredient().getID() % stockVarSize;
+                current.setNextStockNode(stockVar[index]);
+                stockVar[index] = current;
+                current = next;
+            }
+        }
+        if (rehashIndex == oldStockVar.length) {
+            oldStockVar = null;
+        }
+    }
+
+    private static int nextPrime(int n) {
+        for (int candidate = Math.max(n, 2); ; candidate++) {
+            boolean prime = true;
+            for (int d = 2; (long) d * d <= candidate; d++) {
+                if (candidate % d == 0) {
+                    prime = false;
+                    break;
                 }
-                if (nodeToUpdate != null) break;
             }
+            if (prime) {
+                return candidate;
+            }
+        }
+    }
+
+    /*
+     * Returns the chain-length distribution of the stock hashtable: index k holds the number of
+     * chains (buckets) with exactly k StockNodes. Chains of a resize in progress are counted too.
+     */
+    public int[] stockChainLengths() {
+        int[] histogram = new int[1];
+        StockNode[][] tables = { stockVar, oldStockVar };
+        for (StockNode[] table : tables) {
+            if (table == null) {
+                continue;
+            }
+            int start = (table == oldStockVar) ? rehashIndex : 0;
+            for (int i = start; i < table.length; i++) {
+                int length = 0;
+                for (StockNode ptr = table[i]; ptr != null; ptr = ptr.getNextStockNode()) {
+                    length++;
+                }
+                if (length >= histogram.length) {
+                    histogram = Arrays.copyOf(histogram, length + 1);
+                }
+                histogram[length]++;
+            }
+        }
+        return histogram;
+    }
+
+    public StockNode findStockNode(String ingredientName) {
+        if (ingredientName == null) {
+            return null;
+        }
+        return stockNameIndex.get(indexKey(ingredientName)); // Returns null if no matching node is found
+    }
+
+    // Name lookup for deleteStockNode/updateStock, which have always matched names case-sensitively
+    private StockNode findStockNodeExact(String ingredientName) {
+        StockNode node = findStockNode(ingredientName);
+        if (node != null && !node.getIngredient().getName().equals(ingredientName)) {
+            return null;
+        }
+        return node;
+    }
+
+    public void updateStock(String ingredientName, int ingredientID, int stockAmountToAdd) {
+        StockLocks locks = lockStructure(false);
+        try {
+            StockNode nodeToUpdate = null;
+            if (ingredientName == null && ingredientID != -1) {
+                nodeToUpdate = findStockNode(ingredientID);
+            } else if (ingredientID == -1 && ingredientName != null) {
+                nodeToUpdate = findStockNodeExact(ingredientName);
+            }
+            lockIngredient(locks, nodeToUpdate);
+            try {
+                updateStock(nodeToUpdate, stockAmountToAdd);
+            } finally {
+                unlockIngredient(locks, nodeToUpdate);
+            }
+        } finally {
+            unlockStructure(locks, false);
         }
+    }
+
+    private void updateStock(StockNode nodeToUpdate, int stockAmountToAdd) {
         if (nodeToUpdate != null) {
             nodeToUpdate.getIngredient().updateStockLevel(stockAmountToAdd);
+            TransactionWal log = wal;
+            if (log != null) {
+                log.appendStockChange(nodeToUpdate.getIngredient().getID(), stockAmountToAdd);
+            }
+            invalidateAvailability(nodeToUpdate.getIngredient().getID());
         } else {
             System.out.println("Ingredient not found.");
         }
     }
 
+    // Same as updateStock(ingredientName, -1, amount) for a node already found with findStockNode(ingredientName)
+    private void updateStock(String ingredientName, StockNode stockNode, int stockAmountToAdd) {
+        boolean exact = stockNode != null && stockNode.getIngredient().getName().equals(ingredientName);
+        updateStock(exact ? stockNode : null, stockAmountToAdd);
+    }
+
     public void updatePriceAndProfit() {
-        // Assuming menuVar is an array of MenuNode
-        for (int i = 0; i < menuVar.length; i++) {
-            MenuNode currentNode = menuVar[i];
-            while (currentNode != null) {
-                Dish dish = currentNode.getDish();
-                double dishCost = 0.0;
-                for (int ingredientID : dish.getStockID()) {
-                    StockNode ingredientNode = findStockNode(ingredientID);
-                    if (ingredientNode != null) {
-                        dishCost += ingredientNode.getIngredient().getCost();
-                    }
+        checkOwnMenu();
+        StockLocks locks = lockStructure(true);
+        try {
+            // Assuming menuVar is an array of MenuNode
+            for (int i = 0; i < menuVar.length; i++) {
+                MenuNode currentNode = menuVar[i];
+                while (currentNode != null) {
+                    priceDish(currentNode.getDish(), categoryMarkup[i]);
+                    currentNode = currentNode.getNextMenuNode();
                 }
-                double dishPrice = dishCost * 1.2;
-                dish.setPriceOfDish(dishPrice);
-                dish.setProfit(dishPrice - dishCost);
+            }
+        } finally {
+            unlockStructure(locks, true);
+        }
+    }
+
+    private void priceDish(Dish dish, double markup) {
+        double dishCost = 0.0;
+        for (int ingredientID : dish.getStockID()) {
+            StockNode ingredientNode = findStockNode(ingredientID);
+            if (ingredientNode != null) {
+                dishCost += ingredientNode.getIngredient().getCost();
+            }
+        }
+        double dishPrice = dishCost * markup;
+        dish.setPriceOfDish(dishPrice);
+        dish.setProfit(dishPrice - dishCost);
+    }
 
-                currentNode = currentNode.getNextMenuNode();
+    /*
+     * Changes the cost of one ingredient and reprices only the dishes that use it,
+     * instead of running updatePriceAndProfit() over the whole menu.
+     */
+    public void updateIngredientCost(int ingredientID, double cost) {
+        checkOwnMenu();
+        StockLocks locks = lockStructure(true);
+        try {
+            StockNode stockNode = findStockNode(ingredientID);
+            if (stockNode == null) {
+                System.out.println("Ingredient not found.");
+                return;
             }
+            stockNode.getIngredient().setCost(cost);
+            repriceDishesUsing(ingredientID);
+        } finally {
+            unlockStructure(locks, true);
+        }
+    }
+
+    // Reprices the dishes that use ingredientID, e.g. after its Ingredient cost was changed directly
+    public void repriceDishesUsing(int ingredientID) {
+        checkOwnMenu();
+        StockLocks locks = lockStructure(true);
+        try {
+            for (Dish dish : getDishesUsing(ingredientID)) {
+                priceDish(dish, categoryMarkup[findCategoryIndex(dish.getCategory())]);
+            }
+        } finally {
+            unlockStructure(locks, true);
+        }
+    }
+
+    // Prices are changed only on the RUHungry that owns the menu, see shareMenu()
+    private void checkOwnMenu() {
+        if (menuSource != null) {
+            throw new IllegalStateException("this menu is shared from another RUHungry, change prices there");
+        }
+    }
+
+    public double getMarkup(String category) {
+        return categoryMarkup[findCategoryIndex(category)];
+    }
+
+    // Sets the markup for one category and reprices just that category's dishes
+    public void setMarkup(String category, double markup) {
+        checkOwnMenu();
+        StockLocks locks = lockStructure(true);
+        try {
+            int index = findCategoryIndex(category);
+            categoryMarkup[index] = markup;
+            if (stockVar == null) {
+                return; // nothing to price against yet, updatePriceAndProfit() will pick the markup up
+            }
+            for (MenuNode ptr = menuVar[index]; ptr != null; ptr = ptr.getNextMenuNode()) {
+                priceDish(ptr.getDish(), markup);
+            }
+        } finally {
+            unlockStructure(locks, true);
         }
     }
 
     public void createStockHashTable(String inputFile) {
-        StdIn.setFile(inputFile);
+        createStockHashTable(ByteTokenizer.openFile(inputFile));
+    }
 
-        // Read the size of stockVar and update stockVarSize
-        int stockVarSize = StdIn.readInt();
-        stockVar = new StockNode[stockVarSize]; // Initialize the stockVar hashtable
+    // Reads the stock from in, which no other thread may be reading
+    public void createStockHashTable(ByteTokenizer in) {
+        EngineMetrics m = metrics;
+        long start = System.nanoTime();
+        readStock(in).run();
+        if (m != null) {
+            m.recordStockLoad(start);
+        }
+    }
 
-        while (!StdIn.isEmpty()) {
+    // Parses a stock file without touching this RUHungry and returns the step that installs it
+    private Runnable readStock(ByteTokenizer in) {
+        // Read the size of stockVar
+        int tableSize = in.readInt();
+
+        ArrayList<Ingredient> ingredients = new ArrayList<>();
+        while (!in.isEmpty()) {
             // Read ingredient details
-            int ingredientID = StdIn.readInt();
-            StdIn.readChar(); // To remove the space between ID and name
-            String ingredientName = StdIn.readLine();
-            double cost = StdIn.readDouble();
-            int stockAmount = StdIn.readInt();
+            int ingredientID = in.readInt();
+            in.readChar(); // To remove the space between ID and name
+            String ingredientName = in.readLine();
+            double cost = in.readDouble();
+            int stockAmount = in.readInt();
 
-            // Create Ingredient and StockNode objects
-            Ingredient ingredient = new Ingredient(ingredientID, ingredientName, stockAmount, cost);
-            StockNode node = new StockNode(ingredient, null);
+            ingredients.add(new Ingredient(ingredientID, ingredientName, stockAmount, cost));
+        }
+        // Added to the stockVar hashtable in file order
+        return () -> loadStock(tableSize, ingredients.toArray(new Ingredient[0]));
+    }
 
-            // Add node to stockVar hashtable
-            addNode(node);
+    /*
+     * Installs stock built somewhere other than createStockHashTable(), e.g. by
+     * RestaurantSnapshot: a table of tableSize chains holding the given ingredients. Each
+     * ingredient is added to the front of its chain, so list a chain's ingredients last to first.
+     */
+    public void loadStock(int tableSize, Ingredient[] ingredients) {
+        newStockTable(tableSize);
+        for (Ingredient ingredient : ingredients) {
+            insertStockNode(new StockNode(ingredient, null));
         }
     }
 
-    private void addNode(StockNode node) {
-        int index = node.getIngredient().getID() % stockVar.length;
-        node.setNextStockNode(stockVar[index]);
-        stockVar[index] = node;
+    private void newStockTable(int tableSize) {
+        stockVarSize = tableSize;
+        stockVar = new StockNode[stockVarSize];
+        stockCount = 0;
+        oldStockVar = null;
+        rehashIndex = 0;
+        invalidateAvailability();
+        stockNameIndex = new HashMap<>();
     }
 
     /*
@@ -286,17 +815,122 @@ public class RUHungry {
      */
 
     public void addTransactionNode(TransactionData data) {
+        addTransactionNode(data, null);
+    }
+
+    // servedDish: for a served order, the dish whose stock processOrder() has deducted, logged as one record
+    private void addTransactionNode(TransactionData data, Dish servedDish) {
+        StockLocks locks = lockLedger();
+        try {
+            appendTransactionNode(data, servedDish);
+        } finally {
+            unlockLedger(locks);
+        }
+    }
+
+    private void appendTransactionNode(TransactionData data, Dish servedDish) {
+        // Logged first, so a transaction the WAL rejects is not in the ledger either
+        logAppended(data, servedDish);
+        TransactionLog log = transactionLog;
+        if (log != null) {
+            log.add(data);
+            recordProfit(data);
+            return;
+        }
         TransactionNode newNode = new TransactionNode(data, null);
 
         if (transactionVar == null) {
             // If the list is empty, the new node becomes the head
             transactionVar = newNode;
         } else {
-            TransactionNode current = transactionVar;
-            while (current.getNext() != null) {
-                current = current.getNext();
+            catchUpTail();
+            transactionTail.setNext(newNode);
+        }
+        transactionTail = newNode;
+        recordProfit(data);
+    }
+
+    /*
+     * Nodes may have been linked on past the tail through getFrontTransactionNode(). Moves the
+     * tail to the real end of the list and counts each such node as if it had been added with
+     * addTransactionNode(): its profit goes into the running totals and it is logged to the
+     * WAL. Call holding the ledger lock.
+     */
+    private void catchUpTail() {
+        if (transactionTail == null) {
+            return;
+        }
+        for (TransactionNode next = transactionTail.getNext(); next != null; next = next.getNext()) {
+            transactionTail = next;
+            recordProfit(next.getData());
+            logAppended(next.getData(), null);
+        }
+    }
+
+    /*
+     * Ledger storage. By default every transaction is a TransactionNode in a linked list. With
+     * setColumnarLedger(true) transactions are kept in a TransactionLog instead, as rows of
+     * primitive arrays with interned type and item names, and the TransactionData passed in is
+     * not kept; a ledger of 100k transactions takes several times less heap (HotPathBenchmark's
+     * "ledger heap" measures it). profit(), profit(type), the WAL and resetFrontNode() work the
+     * same either way; getFrontTransactionNode() and getLastTransactionNode() return null while
+     * the ledger is columnar, so read it through getTransactionLog() instead. Switching moves
+     * the transactions already recorded over.
+     */
+    public void setColumnarLedger(boolean columnar) {
+        StockLocks locks = lockLedger();
+        try {
+            if (columnar == (transactionLog != null)) {
+                return;
+            }
+            if (columnar) {
+                catchUpTail();
+                transactionLog = TransactionLog.of(transactionVar);
+                transactionVar = transactionTail = null;
+            } else {
+                TransactionLog log = transactionLog;
+                transactionLog = null;
+                for (int row = 0; row < log.size(); row++) {
+                    TransactionNode node = new TransactionNode(log.getData(row), null);
+                    if (transactionVar == null) {
+                        transactionVar = node;
+                    } else {
+                        transactionTail.setNext(node);
+                    }
+                    transactionTail = node;
+                }
             }
-            current.setNext(newNode);
+        } finally {
+            unlockLedger(locks);
+        }
+    }
+
+    public boolean isColumnarLedger() { return transactionLog != null; }
+
+    private void logAppended(TransactionData data, Dish servedDish) {
+        TransactionWal log = wal;
+        if (log == null) {
+            return;
+        }
+        if (servedDish != null) {
+            log.appendOrder(servedDish, data); // the stock deductions and the transaction as one record
+        } else {
+            log.appendTransaction(data);
+        }
+    }
+
+    // Adds data to the running totals in the same order profit() used to sum the list, after which data cannot change
+    private void recordProfit(TransactionData data) {
+        data.markRecorded();
+        double profit = data.getProfit();
+        runningProfit += profit;
+        String type = data.getType();
+        if ("order".equalsIgnoreCase(type)) {
+            orderProfit += profit;
+        } else if ("donation".equalsIgnoreCase(type)) {
+            donationProfit += profit;
+        } else if ("restock".equalsIgnoreCase(type)) {
+            restockProfit += profit;
         }
     }
 
@@ -305,144 +939,539 @@ public class RUHungry {
         if (menuNode == null) {
             return false;
         }
-        Dish dish = menuNode.getDish();
-        int[] ingredientIDs = dish.getStockID();
-        for (int ingredientID : ingredientIDs) {
-            StockNode stockNode = findStockNode(ingredientID);
-            if (stockNode == null || stockNode.getIngredient().getStockLevel() < numberOfDishes) {
-                return false;
+        return maxServings(menuNode.getDish()) >= numberOfDishes;
+    }
+
+    /*
+     * Returns how many servings of dish the current stock can make: the lowest stock level of
+     * its ingredients, or Integer.MIN_VALUE if one of them is missing from the stock room.
+     * The value is cached per dish and recomputed only after one of its ingredients changes.
+     * In concurrent mode the cache is bypassed and the stock is read under the ingredient locks.
+     */
+    public int maxServings(Dish dish) {
+        StockLocks locks = lockStructure(false);
+        if (locks != null) {
+            int[] stripes = locks.lockIngredients(dish.getStockID());
+            try {
+                return countServings(dish);
+            } finally {
+                locks.unlockIngredients(stripes);
+                unlockStructure(locks, false);
             }
         }
-        return true;
+        int ordinal = dish.getOrdinal();
+        if (dishServingsStale[ordinal]) {
+            dishServings[ordinal] = countServings(dish);
+            dishServingsStale[ordinal] = false;
+        }
+        return dishServings[ordinal];
     }
 
-    public void order(String dishName, int quantity) {
-        if (checkDishAvailability(dishName, quantity)) {
-            MenuNode dishNode = findDish(dishName);
-            if (dishNode != null) {
-                Dish dish = dishNode.getDish();
-                double totalProfit = dish.getProfit() * quantity;
-                processOrder(dishName, quantity, totalProfit);
+    private int countServings(Dish dish) {
+        int servings = Integer.MAX_VALUE;
+        for (int ingredientID : dish.getStockID()) {
+            StockNode stockNode = findStockNode(ingredientID);
+            if (stockNode == null) {
+                return Integer.MIN_VALUE;
             }
-        } else {
-            addTransactionNode(new TransactionData("order", dishName, quantity, 0, false));
+            servings = Math.min(servings, stockNode.getIngredient().getStockLevel());
+        }
+        return servings;
+    }
+
+    // Marks the dishes using ingredientID for recomputation, call after changing an Ingredient directly
+    public void invalidateAvailability(int ingredientID) {
+        if (dishesByIngredient == null) {
+            return; // no menu loaded yet
+        }
+        for (Dish dish : getDishesUsing(ingredientID)) {
+            dishServingsStale[dish.getOrdinal()] = true;
+        }
+    }
 
-            int categoryIndex = findCategoryIndex(findDish(dishName).getDish().getCategory());
-            MenuNode current = findDish(dishName);
-            int dishesChecked = 0;
-            int categorySize = getCategorySize(categoryIndex);
+    // Marks every dish on the menu for recomputation
+    public void invalidateAvailability() {
+        if (dishServingsStale != null) {
+            Arrays.fill(dishServingsStale, true);
+        }
+    }
 
-            do {
-                current = current.getNextMenuNode(); // Move to the next dish in the category
-                dishesChecked++;
+    /*
+     * Returns the transaction that settled the order: the served dish's (the one asked for or
+     * a substitute), or the last failed attempt if nothing could be served.
+     */
+    public TransactionData order(String dishName, int quantity) {
+        StockLocks locks = lockStructure(false);
+        try {
+            return order(dishName, findDish(dishName), quantity);
+        } finally {
+            unlockStructure(locks, false);
+        }
+    }
 
-                if (current == null) {
-                    current = menuVar[categoryIndex]; // Start from the beginning of the category
-                }
+    private TransactionData order(String dishName, MenuNode dishNode, int quantity) {
+        EngineMetrics m = metrics;
+        long start = m == null ? 0 : m.startOrder();
+        TransactionData settled = serveOrder(dishName, dishNode, quantity, m, start);
+        if (m != null && m.isSampled(start) && dishNode != null) {
+            // Probe lengths are taken here rather than in findStockNode(int), which is too hot to sample
+            for (int ingredientID : dishNode.getDish().getStockID()) {
+                m.recordProbes(probeLength(ingredientID));
+            }
+        }
+        return settled;
+    }
 
-                if (dishesChecked >= categorySize) {
-                    break; // Stop after checking all dishes in the category
-                }
+    // Serves the dish or a substitute and records the outcome in m, if metrics are attached
+    private TransactionData serveOrder(String dishName, MenuNode dishNode, int quantity, EngineMetrics m, long start) {
+        if (dishNode == null) {
+            // Not on the menu, so there is no category to look for a substitute in
+            return settleOrder(failOrder(dishName, quantity), 0, m, start);
+        }
 
-                if (checkDishAvailability(current.getDish().getDishName(), quantity)) {
-                    Dish alternativeDish = current.getDish();
-                    double profit = alternativeDish.getProfit() * quantity;
-                    processOrder(alternativeDish.getDishName(), quantity, profit);
-                    return;
-                }
+        Dish dish = dishNode.getDish();
+        TransactionData served = serve(dish, dishName, quantity);
+        if (served != null) {
+            return settleOrder(served, 0, m, start);
+        }
+        TransactionData failed = failOrder(dishName, quantity);
+
+        int categoryIndex = findCategoryIndex(dish.getCategory());
+        int tried = 0;
+        for (Dish alternativeDish : substitutionPolicy.substitutes(menuVar[categoryIndex], categorySize[categoryIndex], dishNode, quantity)) {
+            tried++;
+            served = serve(alternativeDish, alternativeDish.getDishName(), quantity);
+            if (served != null) {
+                return settleOrder(served, tried, m, start);
+            }
+            failed = failOrder(alternativeDish.getDishName(), quantity);
+        }
+        return settleOrder(failed, tried, m, start);
+    }
 
-                addTransactionNode(new TransactionData("order", current.getDish().getDishName(), quantity, 0, false));
+    private TransactionData failOrder(String dishName, int quantity) {
+        TransactionData failed = new TransactionData("order", dishName, quantity, 0, false);
+        addTransactionNode(failed);
+        return failed;
+    }
 
-            } while (true);
+    // substitutesTried is how many dishes were tried after the one asked for
+    private static TransactionData settleOrder(TransactionData settled, int substitutesTried, EngineMetrics m, long start) {
+        if (m != null) {
+            m.recordOrder(settled.getSuccess(), substitutesTried, start);
         }
+        return settled;
     }
 
-    // Helper method to get the number of dishes in a category
-    private int getCategorySize(int categoryIndex) {
-        int count = 0;
-        MenuNode current = menuVar[categoryIndex];
-        while (current != null) {
-            count++;
-            current = current.getNextMenuNode();
+    public SubstitutionPolicy getSubstitutionPolicy() { return substitutionPolicy; }
+    public void setSubstitutionPolicy(SubstitutionPolicy policy) { substitutionPolicy = Objects.requireNonNull(policy); }
+
+    /*
+     * Checks that dish can be made quantity times and, if so, deducts its ingredients and
+     * records the order. In concurrent mode the check and the deductions happen under the
+     * locks of all of the dish's ingredients, so two orders can never oversell the same stock.
+     */
+    private TransactionData serve(Dish dish, String dishName, int quantity) {
+        StockLocks locks = stockLocks;
+        if (locks == null) {
+            if (maxServings(dish) < quantity) {
+                return null;
+            }
+            return processOrder(dish, dishName, quantity, dish.getProfit() * quantity);
+        }
+        int[] stripes = locks.lockIngredients(dish.getStockID());
+        try {
+            if (countServings(dish) < quantity) {
+                return null;
+            }
+            return processOrder(dish, dishName, quantity, dish.getProfit() * quantity);
+        } finally {
+            locks.unlockIngredients(stripes);
         }
-        return count;
     }
 
-    private void processOrder(String dishName, int quantity, double profit) {
-        for (int ingredientID : findDish(dishName).getDish().getStockID()) {
-            updateStock(null, ingredientID, -quantity);
+    private TransactionData processOrder(Dish dish, String dishName, int quantity, double profit) {
+        // serve() has checked that every ingredient is in stock, so none of the nodes is null
+        int[] ingredientIDs = dish.getStockID();
+        for (int ingredientID : ingredientIDs) {
+            findStockNode(ingredientID).getIngredient().updateStockLevel(-quantity);
+            invalidateAvailability(ingredientID);
         }
-        addTransactionNode(new TransactionData("order", dishName, quantity, profit, true));
+        TransactionData served = new TransactionData("order", dishName, quantity, profit, true);
+        addTransactionNode(served, dish);
+        return served;
     }
 
     public double profit() {
-        double totalProfit = 0.0;
-        TransactionNode current = transactionVar;
+        StockLocks locks = lockLedger();
+        try {
+            // Kept up to date by addTransactionNode, so no walk over the transaction list is needed
+            catchUpTail();
+            return runningProfit;
+        } finally {
+            unlockLedger(locks);
+        }
+    }
 
-        while (current != null) {
-            TransactionData data = current.getData();
-            totalProfit += data.getProfit();
-            current = current.getNext();
+    // Profit of one transaction type ("order", "donation" or "restock"), 0 for any other type
+    public double profit(String type) {
+        StockLocks locks = lockLedger();
+        try {
+            catchUpTail();
+            if ("order".equalsIgnoreCase(type)) {
+                return orderProfit;
+            } else if ("donation".equalsIgnoreCase(type)) {
+                return donationProfit;
+            } else if ("restock".equalsIgnoreCase(type)) {
+                return restockProfit;
+            }
+            return 0.0;
+        } finally {
+            unlockLedger(locks);
         }
-        return totalProfit;
     }
 
-    public void donation(String ingredientName, int quantity) {
+    // Returns the transaction recorded for the donation
+    public TransactionData donation(String ingredientName, int quantity) {
+        StockLocks locks = lockStructure(false);
+        try {
+            return donation(ingredientName, findStockNode(ingredientName), quantity);
+        } finally {
+            unlockStructure(locks, false);
+        }
+    }
+
+    private TransactionData donation(String ingredientName, StockNode stockNode, int quantity) {
+        // The profit check, the stock change and the ledger entry happen as one step
+        EngineMetrics m = metrics;
+        long start = m == null ? 0 : m.startSampled();
+        StockLocks locks = stockLocks;
+        lockIngredient(locks, stockNode);
+        lockLedger();
+        TransactionData recorded;
+        try {
+            recorded = donationLocked(ingredientName, stockNode, quantity);
+        } finally {
+            unlockLedger(locks);
+            unlockIngredient(locks, stockNode);
+        }
+        if (m != null) {
+            m.recordDonation(start);
+        }
+        return recorded;
+    }
+
+    private TransactionData donationLocked(String ingredientName, StockNode stockNode, int quantity) {
         boolean donationSuccessful = false;
         double totalProfit = profit();
 
         if (totalProfit > 50) {
-            StockNode stockNode = findStockNode(ingredientName);
             if (stockNode != null && stockNode.getIngredient().getStockLevel() >= quantity) {
                 // Update the stock by decreasing the quantity
-                updateStock(ingredientName, -1, -quantity);
+                updateStock(ingredientName, stockNode, -quantity);
                 donationSuccessful = true;
             }
+        } else {
+            countRejection(true);
         }
         // Create a TransactionData object
         TransactionData donationTransaction = new TransactionData("donation", ingredientName, quantity, 0.0, donationSuccessful);
         // Add the transaction to the list, whether successful or not
         addTransactionNode(donationTransaction);
+        return donationTransaction;
+    }
+
+    // Returns the transaction recorded for the restock, or null if the ingredient is not in stock
+    public TransactionData restock(String ingredientName, int quantity) {
+        StockLocks locks = lockStructure(false);
+        try {
+            return restock(ingredientName, findStockNode(ingredientName), quantity);
+        } finally {
+            unlockStructure(locks, false);
+        }
+    }
+
+    private TransactionData restock(String ingredientName, StockNode stockNode, int quantity) {
+        // The profit check, the stock change and the ledger entry happen as one step
+        EngineMetrics m = metrics;
+        long start = m == null ? 0 : m.startSampled();
+        StockLocks locks = stockLocks;
+        lockIngredient(locks, stockNode);
+        lockLedger();
+        TransactionData recorded;
+        try {
+            recorded = restockLocked(ingredientName, stockNode, quantity);
+        } finally {
+            unlockLedger(locks);
+            unlockIngredient(locks, stockNode);
+        }
+        if (m != null) {
+            m.recordRestock(start);
+        }
+        return recorded;
     }
 
-    public void restock(String ingredientName, int quantity) {
-        StockNode stockNode = findStockNode(ingredientName);
+    private TransactionData restockLocked(String ingredientName, StockNode stockNode, int quantity) {
+        if (stockNode == null) {
+            System.out.println("Ingredient not found.");
+            return null;
+        }
+        double costOfRestocking = stockNode.getIngredient().getCost() * quantity;
+        double totalProfit = profit();
 
-        if (stockNode != null) {
-            double costOfRestocking = stockNode.getIngredient().getCost() * quantity;
-            double totalProfit = profit();
+        TransactionData restockTransaction;
+        if (totalProfit >= costOfRestocking) {
+            // profit for restocking
+            updateStock(ingredientName, stockNode, quantity);  // Update the stock
+            restockTransaction = new TransactionData("restock", ingredientName, quantity, -costOfRestocking, true);
+        } else {
+            // Not enough profit for restocking
+            restockTransaction = new TransactionData("restock", ingredientName, quantity, 0, false);
+            countRejection(false);
+        }
+        addTransactionNode(restockTransaction);
+        return restockTransaction;
+    }
 
-            if (totalProfit >= costOfRestocking) {
-                // profit for restocking
-                updateStock(ingredientName, -1, quantity);  // Update the stock
-                addTransactionNode(new TransactionData("restock", ingredientName, quantity, -costOfRestocking, true));
-            } else {
-                // Not enough profit for restocking
-                addTransactionNode(new TransactionData("restock", ingredientName, quantity, 0, false));
-            }
+    // Counts a donation (or restock) turned away by the profit check
+    private void countRejection(boolean donation) {
+        EngineMetrics m = metrics;
+        if (m == null) {
+            return;
+        }
+        if (donation) {
+            m.donationRejected();
         } else {
-            System.out.println("Ingredient not found.");
+            m.restockRejected();
+        }
+    }
+
+    /*
+     * Runs a list of orders, donations and restocks with the same results as calling order(),
+     * donation() and restock() one at a time in list order. Each distinct dish or ingredient
+     * name is resolved once for the whole batch. Requests of any other type are skipped.
+     */
+    public void processBatch(List<TransactionRequest> requests) {
+        StockLocks locks = lockStructure(false);
+        try {
+            processRequests(requests);
+        } finally {
+            unlockStructure(locks, false);
+        }
+    }
+
+    private void processRequests(List<TransactionRequest> requests) {
+        HashMap<String, MenuNode> dishes = new HashMap<>();
+        HashMap<String, StockNode> ingredients = new HashMap<>();
+
+        for (TransactionRequest request : requests) {
+            String type = request.getType();
+            String item = request.getItem();
+            if (type.equalsIgnoreCase("order")) {
+                MenuNode dishNode = dishes.containsKey(item) ? dishes.get(item) : findDish(item);
+                dishes.put(item, dishNode);
+                order(item, dishNode, request.getAmount());
+            } else if (type.equalsIgnoreCase("donation") || type.equalsIgnoreCase("restock")) {
+                StockNode stockNode = ingredients.containsKey(item) ? ingredients.get(item) : findStockNode(item);
+                ingredients.put(item, stockNode);
+                if (type.equalsIgnoreCase("donation")) {
+                    donation(item, stockNode, request.getAmount());
+                } else {
+                    restock(item, stockNode, request.getAmount());
+                }
+            }
+        }
+    }
+
+    /*
+     * Concurrent mode: lets several threads call order(), donation(), restock(), updateStock()
+     * and processBatch() on one RUHungry. Stock is guarded by one lock per stockVar bucket
+     * (ingredientID % stockVarSize) and the transaction list by a single ledger lock, see
+     * StockLocks for the lock order. Load the menu and stock first, then enable it before
+     * starting the worker threads.
+     */
+    public void enableConcurrency() {
+        stockLocks = new StockLocks(stockVarSize);
+    }
+
+    // Call once the worker threads have finished
+    public void disableConcurrency() {
+        stockLocks = null;
+        invalidateAvailability(); // the cached servings were not maintained while concurrent
+    }
+
+    public boolean isConcurrent() { return stockLocks != null; }
+
+    private StockLocks lockStructure(boolean write) {
+        StockLocks locks = stockLocks;
+        if (locks != null) {
+            structureLock(locks, write).lock();
+        }
+        return locks;
+    }
+
+    private static void unlockStructure(StockLocks locks, boolean write) {
+        if (locks != null) {
+            structureLock(locks, write).unlock();
+        }
+    }
+
+    private static Lock structureLock(StockLocks locks, boolean write) {
+        if (write) {
+            return locks.getStructureLock().writeLock();
+        }
+        return locks.getStructureLock().readLock();
+    }
+
+    private StockLocks lockLedger() {
+        StockLocks locks = stockLocks;
+        if (locks != null) {
+            locks.getLedgerLock().lock();
+        }
+        return locks;
+    }
+
+    private static void unlockLedger(StockLocks locks) {
+        if (locks != null) {
+            locks.getLedgerLock().unlock();
         }
     }
 
+    private static void lockIngredient(StockLocks locks, StockNode node) {
+        if (locks != null && node != null) {
+            locks.lockIngredient(node.getIngredient().getID());
+        }
+    }
+
+    private static void unlockIngredient(StockLocks locks, StockNode node) {
+        if (locks != null && node != null) {
+            locks.unlockIngredient(node.getIngredient().getID());
+        }
+    }
 
     /*
      * Seat guests/customers methods
      */
     public void createTables ( String inputFile ) {
-        StdIn.setFile(inputFile);
-        int numberOfTables = StdIn.readInt();
-        tablesInfo = new int[2][numberOfTables];
+        createTables(ByteTokenizer.openFile(inputFile));
+    }
+
+    // Reads the tables from in, which no other thread may be reading
+    public void createTables ( ByteTokenizer in ) {
+        EngineMetrics m = metrics;
+        long start = System.nanoTime();
+        readTables(in).run();
+        if ( m != null ) {
+            m.recordTablesLoad(start);
+        }
+    }
+
+    // Parses a tables file without touching this RUHungry and returns the step that installs it
+    private Runnable readTables ( ByteTokenizer in ) {
+        int numberOfTables = in.readInt();
+        int[] seats = new int[numberOfTables];
+        for ( int t = 0; t < numberOfTables; t++ ) {
+            seats[t] = in.readInt() * in.readInt();
+        }
+        return () -> loadTables(seats);
+    }
+
+    // Sets up one free table per entry of seats (the number of seats at that table)
+    private void loadTables ( int[] seats ) {
+        int numberOfTables = seats.length;
+        tablesInfo = new int[][] { seats, new int[numberOfTables] };
         tables = new People[numberOfTables];
 
+        freeTables = new TreeSet<>();
         for ( int t = 0; t < numberOfTables; t++ ) {
-            tablesInfo[0][t] = StdIn.readInt() * StdIn.readInt();
+            freeTables.add(tableKey(t));
         }
+        seatedQueue = new Queue<People>();
+        leftQueueVar = new Queue<People>();
     }
 
+    /*
+     * Seats every party in waitingQueue in order. Each party gets the free table with the
+     * fewest seats that still fits it (lowest index on ties). When no free table fits, the
+     * party that has been seated the longest leaves, into leftQueueVar, until one does. A
+     * party larger than every table can never be seated and leaves straight away.
+     */
     public void seatAllGuests ( Queue<People> waitingQueue ) {
+        EngineMetrics m = metrics;
+        long start = System.nanoTime();
+        int largestTable = 0;
+        for ( int seats : tablesInfo[0] ) {
+            largestTable = Math.max(largestTable, seats);
+        }
+
+        while ( !waitingQueue.isEmpty() ) {
+            People party = waitingQueue.dequeue();
+            if ( party.getNumberInParty() > largestTable ) {
+                leftQueueVar.enqueue(party);
+                continue;
+            }
+            while ( !seatParty(party) ) {
+                leaveTable(longestSeated().getTableIndex());
+            }
+        }
+        if ( m != null ) {
+            m.recordSeating(start);
+        }
+    }
+
+    // Seats party at the smallest free table that fits it, returns false if none does
+    public boolean seatParty ( People party ) {
+        Long key = freeTables.ceiling(tableKey(party.getNumberInParty(), 0));
+        if ( key == null ) {
+            return false;
+        }
+        freeTables.remove(key);
+        int tableIndex = (int) (key & 0xFFFFFFFFL);
+
+        tables[tableIndex] = party;
+        tablesInfo[1][tableIndex] = 1;
+        party.setTableIndex(tableIndex);
+        seatedQueue.enqueue(party);
+        return true;
+    }
+
+    // The party at tableIndex leaves: it goes to leftQueueVar and the table goes back into the free index
+    public People leaveTable ( int tableIndex ) {
+        People party = tables[tableIndex];
+        if ( party == null ) {
+            throw new IllegalStateException("table " + tableIndex + " is not occupied");
+        }
+        // Parties that leave out of seating order stay in seatedQueue until longestSeated() drops them
+        if ( !seatedQueue.isEmpty() && seatedQueue.peek() == party ) {
+            seatedQueue.dequeue();
+        }
+        tables[tableIndex] = null;
+        tablesInfo[1][tableIndex] = 0;
+        freeTables.add(tableKey(tableIndex));
+        leftQueueVar.enqueue(party);
+        return party;
+    }
+
+    public People[] getTables() { return tables; }
+
+    // The party that has been at a table the longest, or null if every table is free
+    public People longestSeated () {
+        while ( !seatedQueue.isEmpty() ) {
+            People party = seatedQueue.peek();
+            if ( tables[party.getTableIndex()] == party ) {
+                return party;
+            }
+            seatedQueue.dequeue(); // already left
+        }
+        return null;
+    }
+
+    private long tableKey ( int tableIndex ) {
+        return tableKey(tablesInfo[0][tableIndex], tableIndex);
+    }
 
-        // WRITE YOUR CODE HERE
+    private static long tableKey ( int seats, int tableIndex ) {
+        return ((long) seats << 32) | tableIndex;
     }
 }
 
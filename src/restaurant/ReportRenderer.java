@@ -0,0 +1,155 @@
+package restaurant;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * This file prints the transaction ledger and the stock hashtable in the same format as
+ * Driver, writing each row straight into StdOut's output buffer instead of concatenating a
+ * String per row and flushing it. With StdOut.setBuffered(true) a whole report reaches the
+ * terminal or file in a few large writes.
+ *
+ * Execution: java restaurant.ReportRenderer [rows]
+ * prints a generated ledger of that many rows to a temporary file both ways and times them.
+ */
+
+public class ReportRenderer {
+
+    // Fixed text of each row, encoded once
+    private static final byte[] TYPE      = bytes("Type: ");
+    private static final byte[] NAME      = bytes(", Name: ");
+    private static final byte[] AMOUNT    = bytes(", Amount: ");
+    private static final byte[] PROFIT    = bytes(", Profit: $");
+    private static final byte[] SUCCESS   = bytes(", Was it a Success? ");
+    private static final byte[] ID        = bytes("  ID: ");
+    private static final byte[] PRICE     = bytes(" Price: ");
+    private static final byte[] STOCK     = bytes(" Stock Level: ");
+
+    // Every transaction, then the success/failure counts and total profit, as Driver prints them
+    public static void printLedger(RUHungry restaurant) {
+        OutputBuffer out = StdOut.beginReport();
+        try {
+            int successes = 0;
+            int failures = 0;
+            TransactionLog log = restaurant.getTransactionLog();
+            for (TransactionLog.Cursor row = log == null ? null : log.cursor(); row != null && row.next(); ) {
+                if (row.getSuccess()) {
+                    successes++;
+                } else {
+                    failures++;
+                }
+                out.append(TYPE).append(row.getType())
+                   .append(NAME).append(row.getItem())
+                   .append(AMOUNT).append(row.getAmount())
+                   .append(PROFIT).appendCents(row.getProfit())
+                   .append(SUCCESS).append(row.getSuccess())
+                   .newline();
+            }
+            for (TransactionNode ptr = restaurant.getFrontTransactionNode(); ptr != null; ptr = ptr.getNext()) {
+                TransactionData data = ptr.getData();
+                if (data.getSuccess()) {
+                    successes++;
+                } else {
+                    failures++;
+                }
+                out.append(TYPE).append(data.getType())
+                   .append(NAME).append(data.getItem())
+                   .append(AMOUNT).append(data.getAmount())
+                   .append(PROFIT).appendCents(data.getProfit())
+                   .append(SUCCESS).append(data.getSuccess())
+                   .newline();
+            }
+            out.append("Total number of successful transactions: ").append(successes).newline();
+            out.append("Total number of unsuccessful transactions: ").append(failures).newline();
+            out.append("Total profit remaining: $").appendCents(restaurant.profit()).newline();
+            StdOut.endReport(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The first chains of stockVar, one "index i" block per chain, as Driver prints them
+    public static void printStockTable(StockNode[] stockVar, int chains) {
+        OutputBuffer out = StdOut.beginReport();
+        try {
+            for (int i = 0; i < chains; i++) {
+                out.append("index ").append(i).newline();
+                for (StockNode ptr = stockVar[i]; ptr != null; ptr = ptr.getNextStockNode()) {
+                    Ingredient ingredient = ptr.getIngredient();
+                    out.append(ingredient.getName())
+                       .append(ID).append(ingredient.getID())
+                       .append(PRICE).appendCents(ingredient.getCost())
+                       .append(STOCK).append(ingredient.getStockLevel())
+                       .newline();
+                }
+                out.newline();
+            }
+            StdOut.endReport(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        RUHungry restaurant = new RUHungry();
+        String[] types = {"order", "donation", "restock"};
+        for (int i = 0; i < rows; i++) {
+            restaurant.addTransactionNode(new TransactionData(types[i % 3], "Item " + (i % 97), 1 + i % 5,
+                    (i % 13) * 1.37 - 4, i % 4 != 0));
+        }
+
+        File printed = File.createTempFile("ledger", ".println");
+        File rendered = File.createTempFile("ledger", ".rendered");
+        printed.deleteOnExit();
+        rendered.deleteOnExit();
+
+        // Driver's way: a String per row, flushed after every println
+        StdOut.setFile(printed.getPath());
+        long start = System.nanoTime();
+        printLedgerByLine(restaurant);
+        long byLine = System.nanoTime() - start;
+        StdOut.close();
+
+        StdOut.setFile(rendered.getPath());
+        StdOut.setBuffered(true);
+        start = System.nanoTime();
+        printLedger(restaurant);
+        StdOut.flush();
+        long streamed = System.nanoTime() - start;
+        StdOut.close();
+
+        boolean same = Arrays.equals(Files.readAllBytes(printed.toPath()), Files.readAllBytes(rendered.toPath()));
+        System.out.printf("%d rows, %d bytes%n", rows, rendered.length());
+        System.out.printf("println per row: %8.1f ms%n", byLine / 1e6);
+        System.out.printf("streamed:        %8.1f ms%n", streamed / 1e6);
+        System.out.printf("Same output: %b%n", same);
+    }
+
+    private static void printLedgerByLine(RUHungry restaurant) {
+        int successes = 0;
+        int failures = 0;
+        for (TransactionNode ptr = restaurant.getFrontTransactionNode(); ptr != null; ptr = ptr.getNext()) {
+            TransactionData data = ptr.getData();
+            if (data.getSuccess()) {
+                successes++;
+            } else {
+                failures++;
+            }
+            StdOut.println("Type: " + data.getType() + ", Name: " + data.getItem() + ", Amount: " + data.getAmount()
+                    + ", Profit: $" + ((Math.round(data.getProfit() * 100.0)) / 100.0) + ", Was it a Success? " + data.getSuccess());
+        }
+        StdOut.println("Total number of successful transactions: " + successes);
+        StdOut.println("Total number of unsuccessful transactions: " + failures);
+        StdOut.println("Total profit remaining: $" + ((Math.round(restaurant.profit() * 100.0)) / 100.0));
+    }
+}
@@ -0,0 +1,225 @@
+package restaurant;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This file saves a loaded and priced RUHungry to a compact binary file and restores it
+ * without reading menu.in or stock.in again and without calling updatePriceAndProfit().
+ *
+ * A snapshot holds the categories in order with their markups, every category's dishes in
+ * list order with their ingredient IDs, price and profit, and the stock hashtable's size and
+ * ingredients (ID, name, stock level, cost) chain by chain, so the restored hashtable has the
+ * same layout. Tables and transactions are not included.
+ *
+ * The file is written with a FileChannel and read back through a memory-mapped buffer.
+ *
+ * Execution: java restaurant.RestaurantSnapshot [rounds] [menuFile] [stockFile]
+ * compares startup time of the text files against a snapshot of them.
+ */
+
+public class RestaurantSnapshot {
+
+    private static final int MAGIC = 0x52554853; // "RUHS"
+    private static final int VERSION = 1;
+
+    public static void write(RUHungry restaurant, Path file) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+        out = putInt(out, MAGIC);
+        out = putInt(out, VERSION);
+
+        // Menu
+        String[] categories = restaurant.getCategoryArray();
+        MenuNode[] menu = restaurant.getMenu();
+        out = putInt(out, categories.length);
+        for (int i = 0; i < categories.length; i++) {
+            out = putString(out, categories[i]);
+            out = putDouble(out, restaurant.getMarkup(categories[i]));
+            int dishes = 0;
+            for (MenuNode ptr = menu[i]; ptr != null; ptr = ptr.getNextMenuNode()) {
+                dishes++;
+            }
+            out = putInt(out, dishes);
+            for (MenuNode ptr = menu[i]; ptr != null; ptr = ptr.getNextMenuNode()) {
+                Dish dish = ptr.getDish();
+                out = putString(out, dish.getDishName());
+                int[] stockID = dish.getStockID();
+                out = putInt(out, stockID.length);
+                for (int ingredientID : stockID) {
+                    out = putInt(out, ingredientID);
+                }
+                out = putDouble(out, dish.getPriceOfDish());
+                out = putDouble(out, dish.getProfit());
+            }
+        }
+
+        // Stock, each chain last to first so loadStock() rebuilds it in the same order
+        StockNode[] stockVar = restaurant.getStockVar();
+        List<Ingredient> ingredients = new ArrayList<>();
+        for (StockNode chain : stockVar) {
+            int start = ingredients.size();
+            for (StockNode ptr = chain; ptr != null; ptr = ptr.getNextStockNode()) {
+                ingredients.add(start, ptr.getIngredient());
+            }
+        }
+        out = putInt(out, stockVar.length);
+        out = putInt(out, ingredients.size());
+        for (Ingredient ingredient : ingredients) {
+            out = putInt(out, ingredient.getID());
+            out = putString(out, ingredient.getName());
+            out = putInt(out, ingredient.getStockLevel());
+            out = putDouble(out, ingredient.getCost());
+        }
+
+        out.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    // Returns a new RUHungry with the menu, prices and stock saved in file
+    public static RUHungry restore(Path file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException("not a RUHungry snapshot: " + file);
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported snapshot version " + version + ": " + file);
+        }
+
+        // Menu
+        int numCategories = in.getInt();
+        String[] categories = new String[numCategories];
+        MenuNode[] menu = new MenuNode[numCategories];
+        double[] markups = new double[numCategories];
+        for (int i = 0; i < numCategories; i++) {
+            categories[i] = getString(in);
+            markups[i] = in.getDouble();
+            int numDishes = in.getInt();
+            MenuNode tail = null;
+            for (int j = 0; j < numDishes; j++) {
+                String dishName = getString(in);
+                int[] stockID = new int[in.getInt()];
+                for (int k = 0; k < stockID.length; k++) {
+                    stockID[k] = in.getInt();
+                }
+                Dish dish = new Dish(categories[i], dishName, stockID);
+                dish.setPriceOfDish(in.getDouble());
+                dish.setProfit(in.getDouble());
+
+                MenuNode node = new MenuNode(dish, null); // dishes were saved in list order
+                if (tail == null) {
+                    menu[i] = node;
+                } else {
+                    tail.setNextMenuNode(node);
+                }
+                tail = node;
+            }
+        }
+
+        // Stock
+        int tableSize = in.getInt();
+        Ingredient[] ingredients = new Ingredient[in.getInt()];
+        for (int i = 0; i < ingredients.length; i++) {
+            int ingredientID = in.getInt();
+            String name = getString(in);
+            int stockLevel = in.getInt();
+            double cost = in.getDouble();
+            ingredients[i] = new Ingredient(ingredientID, name, stockLevel, cost);
+        }
+
+        RUHungry restaurant = new RUHungry();
+        restaurant.loadMenu(categories, menu, markups);
+        restaurant.loadStock(tableSize, ingredients);
+        return restaurant;
+    }
+
+    /*
+     * Writing helpers, each returns the buffer to keep writing to (a larger copy when full)
+     */
+
+    private static ByteBuffer room(ByteBuffer out, int bytes) {
+        if (out.remaining() >= bytes) {
+            return out;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+        out.flip();
+        return larger.put(out);
+    }
+
+    private static ByteBuffer putInt(ByteBuffer out, int value) {
+        return room(out, 4).putInt(value);
+    }
+
+    private static ByteBuffer putDouble(ByteBuffer out, double value) {
+        return room(out, 8).putDouble(value);
+    }
+
+    private static ByteBuffer putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return room(out, 4 + bytes.length).putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        String menuFile = args.length > 1 ? args[1] : "menu.in";
+        String stockFile = args.length > 2 ? args[2] : "stock.in";
+
+        RUHungry loaded = loadText(menuFile, stockFile);
+        Path snapshot = Files.createTempFile("restaurant", ".snapshot");
+        snapshot.toFile().deleteOnExit();
+        write(loaded, snapshot);
+        StdOut.printf("Snapshot: %d bytes\n", snapshot.toFile().length());
+
+        // Warm up both paths before timing them
+        for (int i = 0; i < rounds / 10 + 1; i++) {
+            loadText(menuFile, stockFile);
+            restore(snapshot);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            loadText(menuFile, stockFile);
+        }
+        long text = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            restore(snapshot);
+        }
+        long binary = System.nanoTime() - start;
+
+        StdOut.printf("%-10s %12s\n", "startup", "us/restore");
+        StdOut.printf("%-10s %12.1f\n", "text", text / 1e3 / rounds);
+        StdOut.printf("%-10s %12.1f\n", "snapshot", binary / 1e3 / rounds);
+        StdOut.printf("Speedup: %.1fx\n", (double) text / binary);
+    }
+
+    private static RUHungry loadText(String menuFile, String stockFile) {
+        RUHungry restaurant = new RUHungry();
+        restaurant.menu(menuFile);
+        restaurant.createStockHashTable(stockFile);
+        restaurant.updatePriceAndProfit();
+        return restaurant;
+    }
+}
@@ -0,0 +1,207 @@
+package restaurant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * This file runs several restaurant locations in one JVM.
+ *
+ * Every location is its own RUHungry with its own stock hashtable and transaction list,
+ * and all of them share one parsed, priced menu. Prices come only from location 0 and its
+ * stock: the other locations throw if asked to reprice, and location 0's menu is changed
+ * through updateMenu(), which holds every worker back while the prices change so no location
+ * reads a half-updated menu. Concurrent updateMenu() calls queue their pauses on every worker
+ * in the same order, so they run one after another; calling it from a location's worker
+ * (inside call()) throws, since the update would wait for that worker to pause behind the
+ * very task that is waiting. Each location has a single worker thread
+ * that makes every change to it, so locations never lock each other and a busy location
+ * uses one core without slowing the others down.
+ *
+ * Requests are routed by location ID (0 to getLocationCount() - 1) and return a
+ * CompletableFuture that completes once that location's worker has processed them.
+ */
+
+public class ShardedRestaurant implements AutoCloseable {
+
+    private final RUHungry[] locations;
+    private final ExecutorService[] workers;
+    private final ReentrantLock menuUpdates = new ReentrantLock(); // held while an update is queued on the workers
+
+    /*
+     * Loads the menu once and one stock file per location; pass the same stock file several
+     * times for identical locations. The menu is priced against the first location's stock.
+     */
+    public ShardedRestaurant(String menuFile, String... stockFiles) {
+        if (stockFiles.length == 0) {
+            throw new IllegalArgumentException("at least one location is required");
+        }
+        locations = new RUHungry[stockFiles.length];
+        workers = new ExecutorService[stockFiles.length];
+
+        // Loading happens here, before any worker starts
+        for (int i = 0; i < stockFiles.length; i++) {
+            RUHungry location = new RUHungry();
+            if (i == 0) {
+                location.menu(menuFile);
+            } else {
+                location.shareMenu(locations[0]);
+            }
+            location.createStockHashTable(stockFiles[i]);
+            if (i == 0) {
+                location.updatePriceAndProfit();
+            }
+            locations[i] = location;
+
+            int id = i;
+            workers[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Worker(task, "location-" + id, this);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // A location's worker thread, so updateMenu() can tell when it is called from one
+    private static final class Worker extends Thread {
+        final ShardedRestaurant owner;
+
+        Worker(Runnable task, String name, ShardedRestaurant owner) {
+            super(task, name);
+            this.owner = owner;
+        }
+    }
+
+    private boolean onWorker() {
+        Thread current = Thread.currentThread();
+        return current instanceof Worker && ((Worker) current).owner == this;
+    }
+
+    public int getLocationCount() { return locations.length; }
+
+    /*
+     * The RUHungry for a location. Only read or change it from inside call() or after
+     * close(), since its worker thread may be using it at any other time.
+     */
+    public RUHungry getLocation(int locationID) { return locations[locationID]; }
+
+    // Runs work on the location's worker thread and completes with its result
+    public <T> CompletableFuture<T> call(int locationID, Function<RUHungry, T> work) {
+        RUHungry location = locations[locationID];
+        return CompletableFuture.supplyAsync(() -> work.apply(location), workers[locationID]);
+    }
+
+    /*
+     * Runs change (e.g. location -> location.setMarkup("Drinks", 1.5)) on location 0, which
+     * owns the shared menu, once every other location's worker has finished the requests
+     * already sent to it and is waiting. The workers carry on when change returns.
+     *
+     * Each update's tasks go onto the workers under menuUpdates, so every worker sees
+     * concurrent updates in the same order and no two of them wait for each other. Throws
+     * IllegalStateException on a location's worker thread.
+     */
+    public CompletableFuture<Void> updateMenu(Consumer<RUHungry> change) {
+        if (onWorker()) {
+            throw new IllegalStateException("updateMenu() cannot run on a location's worker: "
+                    + Thread.currentThread().getName());
+        }
+        CountDownLatch paused = new CountDownLatch(locations.length - 1);
+        CountDownLatch changed = new CountDownLatch(1);
+        menuUpdates.lock();
+        try {
+            for (int i = 1; i < locations.length; i++) {
+                workers[i].execute(() -> {
+                    paused.countDown();
+                    try {
+                        changed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            return call(0, location -> {
+                try {
+                    paused.await();
+                    change.accept(location);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    changed.countDown();
+                }
+                return null;
+            });
+        } finally {
+            menuUpdates.unlock();
+        }
+    }
+
+    public CompletableFuture<Void> order(int locationID, String dishName, int quantity) {
+        return call(locationID, location -> {
+            location.order(dishName, quantity);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> donation(int locationID, String ingredientName, int quantity) {
+        return call(locationID, location -> {
+            location.donation(ingredientName, quantity);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> restock(int locationID, String ingredientName, int quantity) {
+        return call(locationID, location -> {
+            location.restock(ingredientName, quantity);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> processBatch(int locationID, List<TransactionRequest> requests) {
+        return call(locationID, location -> {
+            location.processBatch(requests);
+            return null;
+        });
+    }
+
+    // Profit of one location, after every request already sent to it
+    public CompletableFuture<Double> profit(int locationID) {
+        return call(locationID, RUHungry::profit);
+    }
+
+    // Profit of the whole chain: each location is asked on its own worker, then summed in location order
+    public double profit() {
+        List<CompletableFuture<Double>> profits = new ArrayList<>(locations.length);
+        for (int i = 0; i < locations.length; i++) {
+            profits.add(profit(i));
+        }
+        double total = 0.0;
+        for (CompletableFuture<Double> profit : profits) {
+            total += profit.join();
+        }
+        return total;
+    }
+
+    // Finishes every request already sent and stops the workers
+    public void close() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        for (ExecutorService worker : workers) {
+            try {
+                while (!worker.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // keep waiting for queued requests
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
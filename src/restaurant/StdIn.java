@@ -233,6 +233,9 @@ public final class StdIn {
     /*** end: section (1 of 2) of code duplicated from In to StdIn. */
 
     private static Scanner scanner;
+
+    // reads the file given to setFile() byte by byte; null while reading System.in through scanner
+    private static ByteTokenizer tokenizer;
  
     // it doesn't make sense to instantiate this class
     private StdIn() { }
@@ -249,11 +252,13 @@ public final class StdIn {
      *         for whitespace); {@code false} otherwise
      */
     public static boolean isEmpty() {
+        if (tokenizer != null) return tokenizer.isEmpty();
         return !scanner.hasNext();
     }
 
     public static void resetFile() {
         // scanner.close(); // warning, this may close StdIn the first time!
+        tokenizer = null;
         setScanner(new Scanner(new java.io.BufferedInputStream(System.in), CHARSET_NAME));
     }
 
@@ -267,6 +272,7 @@ public final class StdIn {
      *         {@code false} otherwise
      */
     public static boolean hasNextLine() {
+        if (tokenizer != null) return tokenizer.hasNextLine();
         return scanner.hasNextLine();
     }
 
@@ -279,6 +285,7 @@ public final class StdIn {
      *         {@code false} otherwise
      */
     public static boolean hasNextChar() {
+        if (tokenizer != null) return tokenizer.hasNextChar();
         scanner.useDelimiter(EMPTY_PATTERN);
         boolean result = scanner.hasNext();
         scanner.useDelimiter(WHITESPACE_PATTERN);
@@ -293,6 +300,7 @@ public final class StdIn {
      *         {@code null} if no such line
      */
     public static String readLine() {
+        if (tokenizer != null) return tokenizer.readLine();
         String line;
         try {
             line = scanner.nextLine();
@@ -311,6 +319,7 @@ public final class StdIn {
      */
     public static char readChar() {
         try {
+            if (tokenizer != null) return tokenizer.readChar();
             scanner.useDelimiter(EMPTY_PATTERN);
             String ch = scanner.next();
             assert ch.length() == 1 : "Internal (Std)In.readChar() error!"
@@ -332,6 +341,7 @@ public final class StdIn {
      * @throws NoSuchElementException if standard input is empty
      */
     public static String readAll() {
+        if (tokenizer != null) return tokenizer.readAll();
         if (!scanner.hasNextLine())
             return "";
 
@@ -350,6 +360,7 @@ public final class StdIn {
      */
     public static String readString() {
         try {
+            if (tokenizer != null) return tokenizer.readString();
             return scanner.next();
         }
         catch (NoSuchElementException e) {
@@ -367,10 +378,11 @@ public final class StdIn {
      */
     public static int readInt() {
         try {
+            if (tokenizer != null) return tokenizer.readInt();
             return scanner.nextInt();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = nextToken();
             throw new InputMismatchException("attempts to read an 'int' value from standard input, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -390,10 +402,11 @@ public final class StdIn {
      */
     public static double readDouble() {
         try {
+            if (tokenizer != null) return tokenizer.readDouble();
             return scanner.nextDouble();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = nextToken();
             throw new InputMismatchException("attempts to read a 'double' value from standard input, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -412,10 +425,11 @@ public final class StdIn {
      */
     public static float readFloat() {
         try {
+            if (tokenizer != null) return tokenizer.readFloat();
             return scanner.nextFloat();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = nextToken();
             throw new InputMismatchException("attempts to read a 'float' value from standard input, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -434,10 +448,11 @@ public final class StdIn {
      */
     public static long readLong() {
         try {
+            if (tokenizer != null) return tokenizer.readLong();
             return scanner.nextLong();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = nextToken();
             throw new InputMismatchException("attempts to read a 'long' value from standard input, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -456,10 +471,11 @@ public final class StdIn {
      */
     public static short readShort() {
         try {
+            if (tokenizer != null) return tokenizer.readShort();
             return scanner.nextShort();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = nextToken();
             throw new InputMismatchException("attempts to read a 'short' value from standard input, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -478,10 +494,11 @@ public final class StdIn {
      */
     public static byte readByte() {
         try {
+            if (tokenizer != null) return tokenizer.readByte();
             return scanner.nextByte();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = nextToken();
             throw new InputMismatchException("attempts to read a 'byte' value from standard input, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -599,6 +616,11 @@ public final class StdIn {
         resync();
     }
 
+    // the token that failed to parse, for error messages
+    private static String nextToken() {
+        return tokenizer != null ? tokenizer.readString() : scanner.next();
+    }
+
     /**
      * If StdIn changes, use this to reinitialize the scanner.
      */
@@ -647,8 +669,8 @@ public final class StdIn {
 
     public static void setFile(String filename) {
         try {
-            // scanner.close(); // warning, this may close StdIn the first time!
-            setScanner(new Scanner(new java.io.File(filename), CHARSET_NAME));
+            // files are read straight from a memory-mapped buffer instead of through the scanner
+            tokenizer = ByteTokenizer.open(java.nio.file.Paths.get(filename));
         }
         catch (java.io.IOException ioe) {
             System.err.println("Could not open " + filename);
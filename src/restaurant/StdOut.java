@@ -11,8 +11,13 @@ package restaurant;
  ******************************************************************************/
 
 import java.lang.System;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.FileOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
@@ -54,6 +59,9 @@ import java.util.Locale;
  *       and floating-point literals.
  *  <li> {@code StdOut} <em>flushes</em> standard output after each call to
  *       {@code print()} so that text will appear immediately in the terminal.
+ *       {@link #setBuffered(boolean)} turns this off for large outputs: text then
+ *       collects in an {@link OutputBuffer} and is written when it fills, on
+ *       {@link #flush()} or {@link #close()}, and when the program exits.
  *  </ul>
  *  <p>
  *  <b>Reference.</b>
@@ -76,8 +84,18 @@ public final class StdOut {
     // send output here
     private static PrintWriter out;
 
+    // where out writes to: System.out or the file given to setFile()
+    private static OutputStream target;
+
+    // buffered mode: out writes into this buffer instead of flushing after each call; null otherwise
+    private static OutputBuffer buffer;
+
+    // set once buffered mode has registered its flush at shutdown
+    private static boolean flushOnExit;
+
     // this is called before invoking any methods
     static {
+        target = System.out;
         try {
             out = new PrintWriter(new OutputStreamWriter(System.out, CHARSET_NAME), true);
         }
@@ -91,7 +109,10 @@ public final class StdOut {
 
     public static void setFile(String filename) {
         try {
-            out = new PrintWriter(new FileOutputStream(new java.io.File(filename)), true);
+            FileOutputStream file = new FileOutputStream(new java.io.File(filename));
+            out.flush();
+            target = file;
+            openWriter(buffer != null);
         }
         catch (java.io.IOException ioe) {
             System.err.println("Could not open " + filename);
@@ -102,12 +123,91 @@ public final class StdOut {
         out.close();
     }
 
+   /**
+     * Turns buffered mode on or off. In buffered mode {@code print()}, {@code println()}
+     * and {@code printf()} no longer flush: output collects in a large direct buffer
+     * and is written when the buffer fills, on {@link #flush()} or {@link #close()},
+     * and when the program exits. Output written straight to {@code System.out} is
+     * not ordered with buffered output.
+     *
+     * @param buffered {@code true} to buffer output, {@code false} to flush after every call
+     */
+    public static void setBuffered(boolean buffered) {
+        if (buffered == (buffer != null)) {
+            return;
+        }
+        out.flush();
+        if (buffered && !flushOnExit) {
+            Runtime.getRuntime().addShutdownHook(new Thread(StdOut::flush));
+            flushOnExit = true;
+        }
+        openWriter(buffered);
+    }
+
+   /**
+     * Returns true if output is buffered, see {@link #setBuffered(boolean)}.
+     *
+     * @return {@code true} in buffered mode
+     */
+    public static boolean isBuffered() {
+        return buffer != null;
+    }
+
+   /**
+     * Writes out everything printed so far.
+     */
+    public static void flush() {
+        out.flush();
+    }
+
+    // points out at target, through a new buffer in buffered mode
+    private static void openWriter(boolean buffered) {
+        if (buffered) {
+            buffer = new OutputBuffer(channel());
+            out = new PrintWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8), false);
+        } else {
+            buffer = null;
+            out = new PrintWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), true);
+        }
+    }
+
+    // flushes after each call unless in buffered mode
+    private static void autoflush() {
+        if (buffer == null) {
+            out.flush();
+        }
+    }
+
+    /*
+     * Used by ReportRenderer to write a report straight into the output buffer: beginReport()
+     * returns a buffer holding everything printed before, endReport() flushes it unless
+     * StdOut is in buffered mode.
+     */
+    static OutputBuffer beginReport() {
+        out.flush();
+        return buffer != null ? buffer : new OutputBuffer(channel(), 64 * 1024);
+    }
+
+    // files are written straight from the direct buffer; System.out goes through its stream
+    private static WritableByteChannel channel() {
+        if (target instanceof FileOutputStream) {
+            return ((FileOutputStream) target).getChannel();
+        }
+        return Channels.newChannel(target);
+    }
+
+    static void endReport(OutputBuffer report) throws IOException {
+        if (report != buffer) {
+            report.flush();
+        }
+    }
+
    /**
      * Terminates the current line by printing the line-separator string.
      */
     public static void println() {
         out.println();
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -117,7 +217,7 @@ public final class StdOut {
      */
     public static void println(Object x) {
         out.println(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -127,7 +227,7 @@ public final class StdOut {
      */
     public static void println(boolean x) {
         out.println(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -137,7 +237,7 @@ public final class StdOut {
      */
     public static void println(char x) {
         out.println(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -147,7 +247,7 @@ public final class StdOut {
      */
     public static void println(double x) {
         out.println(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -157,7 +257,7 @@ public final class StdOut {
      */
     public static void println(float x) {
         out.println(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -167,7 +267,7 @@ public final class StdOut {
      */
     public static void println(int x) {
         out.println(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -177,7 +277,7 @@ public final class StdOut {
      */
     public static void println(long x) {
         out.println(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -187,7 +287,7 @@ public final class StdOut {
      */
     public static void println(short x) {
         out.println(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -199,7 +299,7 @@ public final class StdOut {
      */
     public static void println(byte x) {
         out.println(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -216,7 +316,7 @@ public final class StdOut {
      */
     public static void print(Object x) {
         out.print(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -226,7 +326,7 @@ public final class StdOut {
      */
     public static void print(boolean x) {
         out.print(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -236,7 +336,7 @@ public final class StdOut {
      */
     public static void print(char x) {
         out.print(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -246,7 +346,7 @@ public final class StdOut {
      */
     public static void print(double x) {
         out.print(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -256,7 +356,7 @@ public final class StdOut {
      */
     public static void print(float x) {
         out.print(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -266,7 +366,7 @@ public final class StdOut {
      */
     public static void print(int x) {
         out.print(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -276,7 +376,7 @@ public final class StdOut {
      */
     public static void print(long x) {
         out.print(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -286,7 +386,7 @@ public final class StdOut {
      */
     public static void print(short x) {
         out.print(x);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -296,7 +396,7 @@ public final class StdOut {
      */
     public static void print(byte x) {
         out.print(x);
-        out.flush();
+        autoflush();
     }
     
 
@@ -310,7 +410,7 @@ public final class StdOut {
      */
     public static void printf(String format, Object... args) {
         out.printf(LOCALE, format, args);
-        out.flush();
+        autoflush();
     }
 
    /**
@@ -323,7 +423,7 @@ public final class StdOut {
      */
     public static void printf(Locale locale, String format, Object... args) {
         out.printf(locale, format, args);
-        out.flush();
+        autoflush();
     }
 
     
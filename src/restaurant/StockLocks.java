@@ -0,0 +1,86 @@
+package restaurant;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This file holds the locks RUHungry uses once concurrent mode is enabled.
+ *
+ * Lock order, always taken in this order and released in reverse:
+ * 1. structure: read lock for orders/donations/restocks, write lock for adding or deleting
+ *    StockNodes and repricing the menu
+ * 2. stripes: one lock per stock hashtable bucket (ingredientID % stripe count), several
+ *    stripes are always taken in ascending index order
+ * 3. ledger: guards the transaction list and the running profit totals
+ */
+
+public class StockLocks {
+
+    private final ReentrantReadWriteLock structure;
+    private final ReentrantLock[] stripes;
+    private final ReentrantLock ledger;
+
+    // Constructor, stripeCount is normally the size of the stock hashtable
+    public StockLocks(int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("stripe count must be positive: " + stripeCount);
+        }
+        structure = new ReentrantReadWriteLock();
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        ledger = new ReentrantLock();
+    }
+
+    public ReentrantReadWriteLock getStructureLock() { return structure; }
+    public ReentrantLock getLedgerLock() { return ledger; }
+    public int getStripeCount() { return stripes.length; }
+
+    public int stripe(int ingredientID) {
+        return Math.floorMod(ingredientID, stripes.length);
+    }
+
+    public void lockIngredient(int ingredientID) {
+        stripes[stripe(ingredientID)].lock();
+    }
+
+    public void unlockIngredient(int ingredientID) {
+        stripes[stripe(ingredientID)].unlock();
+    }
+
+    /*
+     * Locks the stripes of every ingredient in ingredientIDs, in ascending stripe order so two
+     * orders sharing ingredients can never wait on each other. Returns the stripes that were
+     * locked, to be passed to unlockIngredients.
+     */
+    public int[] lockIngredients(int[] ingredientIDs) {
+        int[] locked = new int[ingredientIDs.length];
+        int count = 0;
+        for (int ingredientID : ingredientIDs) {
+            // Insertion sort, skipping duplicates; dishes only have a handful of ingredients
+            int s = stripe(ingredientID);
+            int i = count - 1;
+            while (i >= 0 && locked[i] > s) {
+                i--;
+            }
+            if (i >= 0 && locked[i] == s) {
+                continue;
+            }
+            System.arraycopy(locked, i + 1, locked, i + 2, count - i - 1);
+            locked[i + 1] = s;
+            count++;
+        }
+        int[] result = (count == locked.length) ? locked : java.util.Arrays.copyOf(locked, count);
+        for (int s : result) {
+            stripes[s].lock();
+        }
+        return result;
+    }
+
+    public void unlockIngredients(int[] lockedStripes) {
+        for (int i = lockedStripes.length - 1; i >= 0; i--) {
+            stripes[lockedStripes[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package restaurant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This file decides which dishes RUHungry.order() tries, in order, when the dish
+ * that was ordered is not available. Every candidate that is also unavailable is
+ * recorded as a failed order before the next one is tried.
+ */
+
+public interface SubstitutionPolicy {
+
+    /*
+     * Returns the dishes to try instead of the one at unavailable.
+     * categoryHead is the front of the unavailable dish's category list and
+     * categorySize is the number of dishes in that list.
+     */
+    List<Dish> substitutes(MenuNode categoryHead, int categorySize, MenuNode unavailable, int quantity);
+
+    // The rest of the category in list order, wrapping around to the front (the original behaviour)
+    SubstitutionPolicy NEXT_IN_LIST = (categoryHead, categorySize, unavailable, quantity) -> {
+        List<Dish> dishes = new ArrayList<>(categorySize);
+        MenuNode current = unavailable;
+        for (int dishesChecked = 1; dishesChecked < categorySize; dishesChecked++) {
+            current = current.getNextMenuNode();
+            if (current == null) {
+                current = categoryHead; // Start from the beginning of the category
+            }
+            dishes.add(current.getDish());
+        }
+        return dishes;
+    };
+
+    // The rest of the category from highest to lowest profit, ties kept in list order
+    SubstitutionPolicy HIGHEST_PROFIT = (categoryHead, categorySize, unavailable, quantity) -> {
+        List<Dish> dishes = NEXT_IN_LIST.substitutes(categoryHead, categorySize, unavailable, quantity);
+        dishes.sort((a, b) -> Double.compare(b.getProfit(), a.getProfit()));
+        return dishes;
+    };
+}
@@ -3,6 +3,10 @@ package restaurant;
 /**
  * This file is the data portion of the TransactionNode.
  *
+ * Once RUHungry has counted a transaction in its ledger (and its running profit totals),
+ * the setters throw IllegalStateException: changing it then would leave profit() and
+ * profit(type) disagreeing with the list. Make a new TransactionData instead.
+ *
  * @author Mary Buist
  * @author Kushi Sharma
  */
@@ -14,6 +18,7 @@ public class TransactionData {
     private int     amount;  // integer amount of food being purchased/donated/restocked
     private double  profit;  // profit? (+/-)
     private boolean success; // true if successfull transaction, false otherwise 
+    private boolean recorded; // counted in a ledger's totals, so no longer changeable
 
     // Constructor
     public TransactionData (){
@@ -37,11 +42,22 @@ public class TransactionData {
     public String getType() { return type;}
     public String getItem() { return item;}
     public int getAmount() { return amount;}
-    public Double getProfit() { return profit;}
+    public double getProfit() { return profit;}
     public boolean getSuccess() { return success;}
 
-    public void setType(String typeInput) {type = typeInput;}
-    public void setItem(String itemInput) {item = itemInput;}
-    public void setProfit(double profitInput) {profit = profitInput;}
-    public void setSuccess(boolean successInput) {success = successInput;}
+    public boolean isRecorded() { return recorded;}
+
+    public void setType(String typeInput) {checkNotRecorded(); type = typeInput;}
+    public void setItem(String itemInput) {checkNotRecorded(); item = itemInput;}
+    public void setProfit(double profitInput) {checkNotRecorded(); profit = profitInput;}
+    public void setSuccess(boolean successInput) {checkNotRecorded(); success = successInput;}
+
+    // Called by RUHungry when the transaction goes into its running totals
+    void markRecorded() { recorded = true;}
+
+    private void checkNotRecorded() {
+        if (recorded) {
+            throw new IllegalStateException("transaction already recorded in the ledger: " + type + " " + item);
+        }
+    }
 }
@@ -0,0 +1,229 @@
+package restaurant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This file is a column-oriented alternative to the TransactionNode linked list.
+ *
+ * Each transaction is a row across parallel primitive arrays (amount, profit, success)
+ * with the type and item strings interned to int IDs. Rows live in fixed-size chunks so
+ * growing the log never copies earlier rows, and a Cursor walks the rows without
+ * allocating a TransactionData per transaction.
+ *
+ * RUHungry keeps its ledger in one of these after setColumnarLedger(true).
+ */
+
+public class TransactionLog {
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // rows per chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private int[][]     typeIDs;   // chunks of interned transaction types
+    private int[][]     itemIDs;   // chunks of interned item names
+    private int[][]     amounts;   // chunks of amounts ordered/donated/restocked
+    private double[][]  profits;   // chunks of profits (+/-)
+    private boolean[][] successes; // chunks of success flags
+    private int size;              // number of rows in the log
+
+    // Interned strings: name -> ID and ID -> name
+    private HashMap<String, Integer> typeTable;
+    private ArrayList<String>        typeNames;
+    private HashMap<String, Integer> itemTable;
+    private ArrayList<String>        itemNames;
+
+    // Constructor
+    public TransactionLog() {
+        typeIDs   = new int[0][];
+        itemIDs   = new int[0][];
+        amounts   = new int[0][];
+        profits   = new double[0][];
+        successes = new boolean[0][];
+        size = 0;
+        typeTable = new HashMap<>();
+        typeNames = new ArrayList<>();
+        itemTable = new HashMap<>();
+        itemNames = new ArrayList<>();
+    }
+
+    // Copies a TransactionNode list, e.g. RUHungry.getFrontTransactionNode(), into a new log
+    public static TransactionLog of(TransactionNode front) {
+        TransactionLog log = new TransactionLog();
+        for (TransactionNode ptr = front; ptr != null; ptr = ptr.getNext()) {
+            log.add(ptr.getData());
+        }
+        return log;
+    }
+
+    public void add(TransactionData data) {
+        add(data.getType(), data.getItem(), data.getAmount(), data.getProfit(), data.getSuccess());
+    }
+
+    public void add(String type, String item, int amount, double profit, boolean success) {
+        int chunk = size >>> CHUNK_BITS;
+        if (chunk == amounts.length) {
+            addChunk();
+        }
+        int row = size & CHUNK_MASK;
+        typeIDs[chunk][row]   = intern(type, typeTable, typeNames);
+        itemIDs[chunk][row]   = intern(item, itemTable, itemNames);
+        amounts[chunk][row]   = amount;
+        profits[chunk][row]   = profit;
+        successes[chunk][row] = success;
+        size++;
+    }
+
+    private void addChunk() {
+        int chunks = amounts.length + 1;
+        typeIDs   = Arrays.copyOf(typeIDs, chunks);
+        itemIDs   = Arrays.copyOf(itemIDs, chunks);
+        amounts   = Arrays.copyOf(amounts, chunks);
+        profits   = Arrays.copyOf(profits, chunks);
+        successes = Arrays.copyOf(successes, chunks);
+        typeIDs[chunks - 1]   = new int[CHUNK_SIZE];
+        itemIDs[chunks - 1]   = new int[CHUNK_SIZE];
+        amounts[chunks - 1]   = new int[CHUNK_SIZE];
+        profits[chunks - 1]   = new double[CHUNK_SIZE];
+        successes[chunks - 1] = new boolean[CHUNK_SIZE];
+    }
+
+    // null is interned as -1 so it round-trips back to null
+    private static int intern(String name, HashMap<String, Integer> table, ArrayList<String> names) {
+        if (name == null) {
+            return -1;
+        }
+        Integer id = table.get(name);
+        if (id == null) {
+            id = names.size();
+            table.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    // Empties the log, including the interned names, so a log cleared every day does not grow
+    public void clear() {
+        typeIDs   = new int[0][];
+        itemIDs   = new int[0][];
+        amounts   = new int[0][];
+        profits   = new double[0][];
+        successes = new boolean[0][];
+        size = 0;
+        typeTable = new HashMap<>();
+        typeNames = new ArrayList<>();
+        itemTable = new HashMap<>();
+        itemNames = new ArrayList<>();
+    }
+
+    // "Getter" methods
+    public int size() { return size; }
+
+    public String getType(int row) { return name(typeNames, typeIDs[row >>> CHUNK_BITS][row & CHUNK_MASK]); }
+    public String getItem(int row) { return name(itemNames, itemIDs[row >>> CHUNK_BITS][row & CHUNK_MASK]); }
+    public int getAmount(int row) { return amounts[row >>> CHUNK_BITS][row & CHUNK_MASK]; }
+    public double getProfit(int row) { return profits[row >>> CHUNK_BITS][row & CHUNK_MASK]; }
+    public boolean getSuccess(int row) { return successes[row >>> CHUNK_BITS][row & CHUNK_MASK]; }
+
+    // Builds a TransactionData for one row, for code that still wants the object form
+    public TransactionData getData(int row) {
+        return new TransactionData(getType(row), getItem(row), getAmount(row), getProfit(row), getSuccess(row));
+    }
+
+    // ID of an interned type, or -1 if no transaction of that type has been logged
+    public int typeID(String type) {
+        Integer id = typeTable.get(type);
+        return id == null ? -1 : id;
+    }
+
+    private static String name(ArrayList<String> names, int id) {
+        return id < 0 ? null : names.get(id);
+    }
+
+    /*
+     * Aggregates, summed in row order so they match summing the TransactionNode list
+     */
+
+    public double profit() {
+        double total = 0.0;
+        for (int c = 0, remaining = size; remaining > 0; c++, remaining -= CHUNK_SIZE) {
+            double[] chunk = profits[c];
+            int n = Math.min(remaining, CHUNK_SIZE);
+            for (int i = 0; i < n; i++) {
+                total += chunk[i];
+            }
+        }
+        return total;
+    }
+
+    public double profit(String type) {
+        int id = typeID(type);
+        if (id < 0) {
+            return 0.0;
+        }
+        double total = 0.0;
+        for (int c = 0, remaining = size; remaining > 0; c++, remaining -= CHUNK_SIZE) {
+            double[] chunk = profits[c];
+            int[] types = typeIDs[c];
+            int n = Math.min(remaining, CHUNK_SIZE);
+            for (int i = 0; i < n; i++) {
+                if (types[i] == id) {
+                    total += chunk[i];
+                }
+            }
+        }
+        return total;
+    }
+
+    public int countSuccesses() {
+        int count = 0;
+        for (int c = 0, remaining = size; remaining > 0; c++, remaining -= CHUNK_SIZE) {
+            boolean[] chunk = successes[c];
+            int n = Math.min(remaining, CHUNK_SIZE);
+            for (int i = 0; i < n; i++) {
+                if (chunk[i]) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Walks the log in insertion order. Call next() before reading each row:
+     *
+     *     TransactionLog.Cursor c = log.cursor();
+     *     while (c.next()) { total += c.getProfit(); }
+     *
+     * Rows added while a cursor is open are visited once the cursor reaches them.
+     */
+    public class Cursor {
+        private int row = -1;
+        private int chunk;
+        private int offset;
+
+        public boolean next() {
+            if (row + 1 >= size) {
+                return false;
+            }
+            row++;
+            chunk = row >>> CHUNK_BITS;
+            offset = row & CHUNK_MASK;
+            return true;
+        }
+
+        public int getRow() { return row; }
+        public int getTypeID() { return typeIDs[chunk][offset]; }
+        public int getItemID() { return itemIDs[chunk][offset]; }
+        public String getType() { return name(typeNames, typeIDs[chunk][offset]); }
+        public String getItem() { return name(itemNames, itemIDs[chunk][offset]); }
+        public int getAmount() { return amounts[chunk][offset]; }
+        public double getProfit() { return profits[chunk][offset]; }
+        public boolean getSuccess() { return successes[chunk][offset]; }
+    }
+}
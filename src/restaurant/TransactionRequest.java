@@ -0,0 +1,70 @@
+package restaurant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This file is one line of a transaction input file (e.g. "order 2 Mac n Cheese Bites"),
+ * used to hand a whole file of requests to RUHungry.processBatch().
+ */
+
+public class TransactionRequest {
+
+    private String type;   // one of three: order, donation, restock
+    private int    amount; // amount of food being ordered/donated/restocked
+    private String item;   // dish name for orders, ingredient name for donations and restocks
+
+    // Constructor
+    public TransactionRequest(String type, int amount, String item) {
+        this.type = type;
+        this.amount = amount;
+        this.item = item;
+    }
+
+    // Parses one line such as "order 2 Mac n Cheese Bites"; the amount must be positive
+    public static TransactionRequest parse(String line) {
+        String[] parts = line.trim().split(" ", 3);
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("expected \"<type> <amount> <item>\": " + line);
+        }
+        int amount;
+        try {
+            amount = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("amount is not an integer: " + line);
+        }
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be positive: " + line);
+        }
+        return new TransactionRequest(parts[0], amount, parts[2]);
+    }
+
+    // Reads a transaction file in the format Driver.testTransactionMethods uses
+    public static List<TransactionRequest> readTransactionFile(String inputFile) {
+        return readTransactionFile(ByteTokenizer.openFile(inputFile));
+    }
+
+    // Same, from a reader of its own, so several files can be read on different threads
+    public static List<TransactionRequest> readTransactionFile(ByteTokenizer in) {
+        int numOrders = in.readInt();
+        List<TransactionRequest> requests = new ArrayList<>(numOrders);
+        for (int orderNumber = 0; orderNumber < numOrders; orderNumber++) {
+            String type = in.readString();
+            in.readChar();
+            int amount = in.readInt();
+            in.readChar();
+            String item = in.readLine();
+            requests.add(new TransactionRequest(type, amount, item));
+        }
+        return requests;
+    }
+
+    // Getter methods
+    public String getType() { return type; }
+    public int getAmount() { return amount; }
+    public String getItem() { return item; }
+
+    public String toString() {
+        return type + " " + amount + " " + item;
+    }
+}
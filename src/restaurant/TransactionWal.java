@@ -0,0 +1,593 @@
+package restaurant;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This file is an append-only write-ahead log of everything that changes a RUHungry's
+ * stock and transaction list, so a day can be rebuilt after a restart.
+ *
+ * Records are written for every TransactionData added to the transaction list, every stock
+ * change (ingredient ID and amount), every ingredient added to or deleted from the stock room
+ * with addStockNode()/deleteStockNode(), and a reset when resetFrontNode() starts a new day.
+ * A served order is a single record: replay adds its transaction and deducts the dish's
+ * ingredients (looked up on the menu), so an order is replayed whole or not at all. The dish
+ * is written as its menu ordinal, which takes no lookup. Type, item and ingredient names are
+ * interned: the first record to use a name is preceded by a record giving it an ID, and later
+ * records carry the ID only. A record is checked (name lengths) before any of it is copied,
+ * so a rejected append leaves nothing behind in the log.
+ *
+ * Appending only copies the record into a direct buffer, so it never waits for the disk; the
+ * one exception is an append that finds the buffer full, which writes it to the page cache
+ * (never forces it) first.
+ *
+ * A background flusher thread does the group commit: every syncMillis, or as soon as
+ * syncBytes are waiting, it swaps in a second buffer, writes the full one with one
+ * FileChannel call and forces the file. A crash therefore loses at most about syncMillis of
+ * records. sync() does the same on the calling thread and returns once everything appended
+ * before it is on disk; close() syncs and stops the flusher, and a shutdown hook syncs the
+ * log if the JVM exits without close(). With syncMillis 0 there is no flusher and every
+ * append is forced before it returns. Only java.util.concurrent locks are used, so appending
+ * from virtual threads (OrderServer) never pins their carrier thread.
+ *
+ * Typical use:
+ *
+ *     restaurant.menu("menu.in");
+ *     restaurant.createStockHashTable("stock.in");
+ *     restaurant.updatePriceAndProfit();
+ *     TransactionWal wal = TransactionWal.recover(restaurant, Paths.get("ruhungry.wal"));
+ *     ... orders, donations, restocks ...
+ *     wal.close();
+ *
+ * File format: the 4 bytes "RUHW", an int version, then records, each starting with a type
+ * byte. Version 1 logs (names written out in every transaction record) are still replayed.
+ */
+
+public class TransactionWal implements AutoCloseable {
+
+    private static final int MAGIC = 0x52554857; // "RUHW"
+    private static final int VERSION = 2;
+
+    private static final byte TRANSACTION_V1 = 1; // type, item (length-prefixed UTF-8), amount, profit, success
+    private static final byte STOCK          = 2; // ingredient ID, amount added
+    private static final byte RESET          = 3; // resetFrontNode()
+    private static final byte NAME           = 4; // name ID, name (length-prefixed UTF-8)
+    private static final byte TRANSACTION    = 5; // type ID, item ID, amount, profit, success
+    private static final byte ORDER          = 6; // dish ordinal, quantity, profit (item is the dish's name)
+    private static final byte ADD_STOCK      = 7; // ingredient ID, name ID, stock level, cost
+    private static final byte DELETE_STOCK   = 8; // name ID
+    private static final byte NAMED_ORDER    = 9; // item ID (a dish, spelled as ordered), quantity, profit
+
+    private static final int NO_NAME = -1; // name ID written for a null name
+
+    public static final long DEFAULT_SYNC_BYTES  = 1 << 20;
+    public static final long DEFAULT_SYNC_MILLIS = 10;
+
+    // Big enough for the largest record: two name records of Short.MAX_VALUE bytes plus a transaction
+    private static final int BUFFER_SIZE = 128 * 1024;
+
+    private final FileChannel channel;
+    private final long syncBytes;
+    private final long syncNanos;
+
+    // Lock order: flushLock, then appendLock. Appenders never hold appendLock while they flush.
+    private final ReentrantLock appendLock = new ReentrantLock(); // guards buffer and names
+    private final ReentrantLock flushLock = new ReentrantLock();  // guards spare and the channel
+    private ByteBuffer buffer;                // records appended but not yet written to the channel
+    private ByteBuffer spare;                 // empty buffer swapped in by the next flush
+    private volatile long unsyncedBytes;      // bytes written to the channel since the last force
+
+    // Name -> ID of every name given an ID so far, in this run or the replayed log. Written
+    // under appendLock, read without it to skip encoding names that already have an ID.
+    private final ConcurrentHashMap<String, Integer> nameIDs;
+
+    private final Thread flusher;             // null when syncMillis is 0
+    private final Thread shutdownHook;
+    private volatile boolean closed;          // set under appendLock, so no append starts after close() syncs
+    private volatile UncheckedIOException failure; // the flusher's last error, thrown to the next caller
+
+    private TransactionWal(FileChannel channel, List<String> names, long syncBytes, long syncMillis) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.spare = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.syncBytes = syncBytes;
+        this.syncNanos = syncMillis * 1_000_000L;
+        this.nameIDs = new ConcurrentHashMap<>();
+        for (int id = 0; id < names.size(); id++) {
+            nameIDs.put(names.get(id), id);
+        }
+
+        if (syncMillis > 0) {
+            flusher = new Thread(this::runFlusher, "TransactionWal flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+        shutdownHook = new Thread(this::syncQuietly, "TransactionWal shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public static TransactionWal recover(RUHungry restaurant, Path file) throws IOException {
+        return recover(restaurant, file, DEFAULT_SYNC_BYTES, DEFAULT_SYNC_MILLIS);
+    }
+
+    /*
+     * Opens (or creates) the log at file, replays every complete record into restaurant, cuts
+     * off a record left half-written by a crash, and attaches the log so that restaurant's
+     * further changes are appended. restaurant must hold the menu and stock the log started from.
+     */
+    public static TransactionWal recover(RUHungry restaurant, Path file, long syncBytes, long syncMillis) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        List<String> names = new ArrayList<>();
+        try {
+            long end;
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, channel.size());
+                }
+                channel.force(true);
+                end = 8;
+            } else {
+                end = replay(channel, restaurant, names);
+                channel.truncate(end);
+                // A version 1 log goes on with version 2 records from here
+                ByteBuffer version = ByteBuffer.allocate(4).putInt(VERSION);
+                version.flip();
+                while (version.hasRemaining()) {
+                    channel.write(version, 4 + version.position());
+                }
+                channel.force(true);
+            }
+            channel.position(end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        TransactionWal wal = new TransactionWal(channel, names, syncBytes, syncMillis);
+        restaurant.setWal(wal);
+        return wal;
+    }
+
+    /*
+     * Applies every complete record to restaurant and returns the offset just past the last
+     * one. names is filled with the interned names, indexed by ID.
+     */
+    private static long replay(FileChannel channel, RUHungry restaurant, List<String> names) throws IOException {
+        ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException("not a RUHungry write-ahead log");
+        }
+        int version = in.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("unsupported write-ahead log version " + version);
+        }
+
+        long end = in.position();
+        while (in.hasRemaining()) {
+            try {
+                if (!replayRecord(in, restaurant, names)) {
+                    break; // garbage after a torn write
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                break; // the last record was only partly written
+            }
+            end = in.position();
+        }
+        return end;
+    }
+
+    // Applies the record at in's position, returns false if it is not a record
+    private static boolean replayRecord(ByteBuffer in, RUHungry restaurant, List<String> names) {
+        byte type = in.get();
+        if (type == ORDER) {
+            Dish dish = dishAt(restaurant, in.getInt());
+            int quantity = in.getInt();
+            double profit = in.getDouble();
+            replayOrder(restaurant, dish, dish.getDishName(), quantity, profit);
+            return true;
+        }
+        if (type == TRANSACTION) {
+            String transactionType = name(names, in.getInt());
+            String item = name(names, in.getInt());
+            int amount = in.getInt();
+            double profit = in.getDouble();
+            boolean success = in.get() != 0;
+            restaurant.addTransactionNode(new TransactionData(transactionType, item, amount, profit, success));
+        } else if (type == NAMED_ORDER) {
+            String item = name(names, in.getInt());
+            int quantity = in.getInt();
+            double profit = in.getDouble();
+            MenuNode dish = restaurant.findDish(item);
+            if (dish == null) {
+                throw new IllegalStateException("the write-ahead log orders " + item + ", which is not on the menu");
+            }
+            replayOrder(restaurant, dish.getDish(), item, quantity, profit);
+        } else if (type == STOCK) {
+            int ingredientID = in.getInt();
+            int amount = in.getInt();
+            restaurant.updateStock(null, ingredientID, amount);
+        } else if (type == NAME) {
+            int id = in.getInt();
+            String name = readString(in);
+            if (id != names.size() || name == null) {
+                return false;
+            }
+            names.add(name);
+        } else if (type == ADD_STOCK) {
+            int ingredientID = in.getInt();
+            String name = name(names, in.getInt());
+            int stockLevel = in.getInt();
+            double cost = in.getDouble();
+            restaurant.addStockNode(new StockNode(new Ingredient(ingredientID, name, stockLevel, cost), null));
+        } else if (type == DELETE_STOCK) {
+            restaurant.deleteStockNode(name(names, in.getInt()));
+        } else if (type == RESET) {
+            restaurant.resetFrontNode();
+        } else if (type == TRANSACTION_V1) {
+            String transactionType = readString(in);
+            String item = readString(in);
+            int amount = in.getInt();
+            double profit = in.getDouble();
+            boolean success = in.get() != 0;
+            restaurant.addTransactionNode(new TransactionData(transactionType, item, amount, profit, success));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static void replayOrder(RUHungry restaurant, Dish dish, String item, int quantity, double profit) {
+        for (int ingredientID : dish.getStockID()) {
+            restaurant.updateStock(null, ingredientID, -quantity);
+        }
+        restaurant.addTransactionNode(new TransactionData("order", item, quantity, profit, true));
+    }
+
+    private static Dish dishAt(RUHungry restaurant, int ordinal) {
+        for (MenuNode category : restaurant.getMenu()) {
+            for (MenuNode ptr = category; ptr != null; ptr = ptr.getNextMenuNode()) {
+                if (ptr.getDish().getOrdinal() == ordinal) {
+                    return ptr.getDish();
+                }
+            }
+        }
+        throw new IllegalStateException("the write-ahead log orders dish " + ordinal + ", which is not on the menu");
+    }
+
+    private static String name(List<String> names, int id) {
+        return id == NO_NAME ? null : names.get(id);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Appending, called by RUHungry while the log is attached
+     */
+
+    public void appendTransaction(TransactionData data) {
+        int typeID = knownID(data.getType());
+        int itemID = knownID(data.getItem());
+        byte[] type = typeID == UNKNOWN ? encode(data.getType()) : null;
+        byte[] item = itemID == UNKNOWN ? encode(data.getItem()) : null;
+        lockRoom(nameRecordSize(type) + nameRecordSize(item) + 1 + 4 + 4 + 4 + 8 + 1);
+        try {
+            if (typeID == UNKNOWN) {
+                typeID = defineName(data.getType(), type);
+            }
+            if (itemID == UNKNOWN) {
+                itemID = defineName(data.getItem(), item);
+            }
+            buffer.put(TRANSACTION);
+            buffer.putInt(typeID);
+            buffer.putInt(itemID);
+            buffer.putInt(data.getAmount());
+            buffer.putDouble(data.getProfit());
+            buffer.put((byte) (data.getSuccess() ? 1 : 0));
+        } finally {
+            unlockAfterAppend();
+        }
+    }
+
+    /*
+     * A served order of dish: data, and the deduction of data's amount from each of the dish's
+     * ingredients, which replay takes from the menu. Written as the dish's ordinal when data's
+     * item is the dish's name as on the menu, otherwise with the item as ordered.
+     */
+    public void appendOrder(Dish dish, TransactionData data) {
+        boolean asOnMenu = dish.getDishName().equals(data.getItem());
+        int itemID = asOnMenu ? dish.getOrdinal() : knownID(data.getItem());
+        byte[] item = itemID == UNKNOWN ? encode(data.getItem()) : null;
+        lockRoom(nameRecordSize(item) + 1 + 4 + 4 + 8);
+        try {
+            if (itemID == UNKNOWN) {
+                itemID = defineName(data.getItem(), item);
+            }
+            buffer.put(asOnMenu ? ORDER : NAMED_ORDER);
+            buffer.putInt(itemID);
+            buffer.putInt(data.getAmount());
+            buffer.putDouble(data.getProfit());
+        } finally {
+            unlockAfterAppend();
+        }
+    }
+
+    public void appendStockChange(int ingredientID, int amount) {
+        lockRoom(1 + 4 + 4);
+        try {
+            buffer.put(STOCK);
+            buffer.putInt(ingredientID);
+            buffer.putInt(amount);
+        } finally {
+            unlockAfterAppend();
+        }
+    }
+
+    // An ingredient added to the stock room with addStockNode(), at its stock level when added
+    public void appendAddStock(Ingredient ingredient) {
+        int nameID = knownID(ingredient.getName());
+        byte[] name = nameID == UNKNOWN ? encode(ingredient.getName()) : null;
+        lockRoom(nameRecordSize(name) + 1 + 4 + 4 + 4 + 8);
+        try {
+            if (nameID == UNKNOWN) {
+                nameID = defineName(ingredient.getName(), name);
+            }
+            buffer.put(ADD_STOCK);
+            buffer.putInt(ingredient.getID());
+            buffer.putInt(nameID);
+            buffer.putInt(ingredient.getStockLevel());
+            buffer.putDouble(ingredient.getCost());
+        } finally {
+            unlockAfterAppend();
+        }
+    }
+
+    // An ingredient removed from the stock room with deleteStockNode()
+    public void appendDeleteStock(String ingredientName) {
+        int nameID = knownID(ingredientName);
+        byte[] name = nameID == UNKNOWN ? encode(ingredientName) : null;
+        lockRoom(nameRecordSize(name) + 1 + 4);
+        try {
+            if (nameID == UNKNOWN) {
+                nameID = defineName(ingredientName, name);
+            }
+            buffer.put(DELETE_STOCK);
+            buffer.putInt(nameID);
+        } finally {
+            unlockAfterAppend();
+        }
+    }
+
+    public void appendReset() {
+        lockRoom(1);
+        try {
+            buffer.put(RESET);
+        } finally {
+            unlockAfterAppend();
+        }
+    }
+
+    /*
+     * Interned names. Before taking appendLock an append looks up the ID of each of its names
+     * and encodes the ones that have none yet, checking their length, so a name that is too
+     * long is rejected before any room is taken; room is taken for a NAME record per such
+     * name. Under appendLock, defineName() writes that NAME record unless another append has
+     * given the name an ID in the meantime.
+     */
+
+    private static final int UNKNOWN = -2; // knownID() of a name with no ID yet
+
+    private int knownID(String name) {
+        if (name == null) {
+            return NO_NAME;
+        }
+        Integer id = nameIDs.get(name);
+        return id == null ? UNKNOWN : id;
+    }
+
+    private static byte[] encode(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("name too long for the write-ahead log: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static int nameRecordSize(byte[] bytes) {
+        return bytes == null ? 0 : 1 + 4 + 2 + bytes.length;
+    }
+
+    // Returns name's ID, first writing a NAME record for it if it has none. Call holding appendLock.
+    private int defineName(String name, byte[] bytes) {
+        Integer id = nameIDs.get(name);
+        if (id != null) {
+            return id;
+        }
+        int newID = nameIDs.size();
+        buffer.put(NAME);
+        buffer.putInt(newID);
+        putString(bytes);
+        nameIDs.put(name, newID);
+        return newID;
+    }
+
+    // bytes has been checked by encode()
+    private void putString(byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /*
+     * Takes appendLock once buffer has room for recordSize bytes, writing it out first if it
+     * is full. closed is checked again with the lock held: close() sets it under appendLock
+     * before its last sync, so an append that gets past the check is in that sync.
+     */
+    private void lockRoom(int recordSize) {
+        UncheckedIOException error = failure;
+        if (error != null) {
+            throw error;
+        }
+        appendLock.lock();
+        while (true) {
+            if (closed) {
+                appendLock.unlock();
+                throw new IllegalStateException("the write-ahead log is closed");
+            }
+            if (buffer.remaining() >= recordSize) {
+                return;
+            }
+            appendLock.unlock();
+            flush(false);
+            appendLock.lock();
+        }
+    }
+
+    private void unlockAfterAppend() {
+        boolean due = unsyncedBytes + buffer.position() >= syncBytes;
+        appendLock.unlock();
+        if (flusher == null) {
+            sync();
+        } else if (due) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /*
+     * Writes the records appended so far to the channel and, if force, forces the file. Only
+     * the buffer swap holds appendLock, so appenders carry on filling the other buffer while
+     * the write runs. The force runs after flushLock is released: a force covers every write
+     * finished before it starts, and an appender whose buffer fills up during a force only
+     * waits for a write to the page cache, not for the disk.
+     */
+    private void flush(boolean force) {
+        flushLock.lock();
+        try {
+            if (!channel.isOpen()) {
+                return; // closed, and everything appended was written by close()
+            }
+            ByteBuffer full;
+            appendLock.lock();
+            try {
+                full = buffer;
+                buffer = spare;
+            } finally {
+                appendLock.unlock();
+            }
+            full.flip();
+            try {
+                while (full.hasRemaining()) {
+                    unsyncedBytes += channel.write(full);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("could not write the write-ahead log", e);
+            } finally {
+                full.clear();
+                spare = full;
+            }
+            if (!force || unsyncedBytes == 0) {
+                return;
+            }
+            unsyncedBytes = 0;
+        } finally {
+            flushLock.unlock();
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // close() forced everything written before it closed the channel
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not force the write-ahead log", e);
+        }
+    }
+
+    private void runFlusher() {
+        while (!closed) {
+            LockSupport.parkNanos(this, syncNanos);
+            try {
+                flush(true);
+            } catch (UncheckedIOException e) {
+                failure = e;
+                return;
+            }
+        }
+    }
+
+    // Writes everything appended so far and forces it to disk
+    public void sync() {
+        UncheckedIOException error = failure;
+        if (error != null) {
+            throw error;
+        }
+        flush(true);
+    }
+
+    private void syncQuietly() {
+        try {
+            if (channel.isOpen()) {
+                flush(true);
+            }
+        } catch (UncheckedIOException e) {
+            // nothing more can be done while the JVM exits
+        }
+    }
+
+    public void close() throws IOException {
+        flushLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            appendLock.lock();
+            closed = true;
+            appendLock.unlock();
+        } finally {
+            flushLock.unlock();
+        }
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // already shutting down, the hook is running or has run
+        }
+        // Under flushLock so an appender flushing a full buffer is not cut off mid-write
+        flushLock.lock();
+        try {
+            sync();
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package restaurant;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This file generates large input files for benchmarks and stress tests, in exactly the
+ * formats RUHungry.menu(), createStockHashTable(), createTables() and
+ * Driver.testTransactionMethods read.
+ *
+ * Everything is derived from one seed, so the same settings always produce the same files,
+ * and the menu, stock and transaction files of one generator agree with each other: every
+ * dish uses ingredients that are in the stock file, and every transaction names a dish or
+ * ingredient that exists.
+ *
+ * Popularity is skewed the way real orders are: orders pick dishes by Zipf-distributed rank,
+ * so a few dishes get most of them, and dishes pick their ingredients the same way, so
+ * common ingredients are shared by many dishes. Ranks are shuffled, so popularity has
+ * nothing to do with a dish's position in the file. Each ingredient starts with enough stock
+ * for its expected share of the first stockedOrders orders (give or take half), so popular
+ * ingredients can still run out and need the restocks in the transaction file.
+ *
+ * Execution: java restaurant.WorkloadGenerator [dir=generated] [seed=1] [dishes=10000]
+ *            [ingredients=100000] [tables=500] [transactions=2000000] [zipf=1.1] [stocked=1000000]
+ * writes menu.in, stock.in, tables.in and transactions.in into dir.
+ */
+
+public class WorkloadGenerator {
+
+    private static final String[] ADJECTIVES = {
+        "Spicy", "Smoked", "Crispy", "Roasted", "Grilled", "Sweet", "Tangy", "Creamy", "Garlic", "Honey",
+        "Lemon", "Truffle", "Charred", "Pickled", "Braised", "Zesty", "Herbed", "Golden", "Toasted", "Wild"
+    };
+    private static final String[] INGREDIENT_NOUNS = {
+        "Tomato", "Onion", "Basil", "Chicken", "Beef", "Cheddar", "Mozzarella", "Rice", "Noodles", "Pepper",
+        "Mushroom", "Spinach", "Salmon", "Shrimp", "Tofu", "Potato", "Carrot", "Corn", "Bean", "Flour"
+    };
+    private static final String[] DISH_NOUNS = {
+        "Pizza", "Burger", "Salad", "Tacos", "Pasta", "Soup", "Sandwich", "Bowl", "Wrap", "Curry",
+        "Nachos", "Skewers", "Dumplings", "Risotto", "Stew", "Sliders", "Flatbread", "Fries", "Pie", "Roll"
+    };
+
+    private final long seed;
+
+    // Settings
+    private int dishes = 10_000;
+    private int ingredients = 100_000;
+    private int dishesPerCategory = 25;
+    private int minIngredientsPerDish = 2;
+    private int maxIngredientsPerDish = 8;
+    private int tables = 500;
+    private double zipfExponent = 1.1;
+    private double orderShare = 0.8;    // share of transactions that are orders
+    private double donationShare = 0.1; // and donations; the rest are restocks
+    private int stockedOrders = 1_000_000;
+
+    // Generated model, built on first use
+    private String[] dishNames;
+    private int[][] dishIngredients;   // ingredient indexes (not IDs) of each dish
+    private String[] ingredientNames;
+    private Zipf dishPopularity;
+    private Zipf ingredientPopularity;
+
+    public WorkloadGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public void setDishes(int dishes) { this.dishes = atLeastOne("dishes", dishes); dishNames = null; }
+    public void setIngredients(int ingredients) { this.ingredients = atLeastOne("ingredients", ingredients); dishNames = null; }
+    public void setDishesPerCategory(int dishesPerCategory) { this.dishesPerCategory = atLeastOne("dishesPerCategory", dishesPerCategory); }
+    public void setTables(int tables) { this.tables = atLeastOne("tables", tables); }
+    public void setZipfExponent(double exponent) { zipfExponent = exponent; dishNames = null; }
+    public void setStockedOrders(int stockedOrders) { this.stockedOrders = stockedOrders; }
+
+    // Dishes with more than max(ingredients) ingredients are cut down to all of them when the model is built
+    public void setIngredientsPerDish(int min, int max) {
+        atLeastOne("min", min);
+        if (max < min) {
+            throw new IllegalArgumentException("max ingredients per dish " + max + " is below min " + min);
+        }
+        minIngredientsPerDish = min;
+        maxIngredientsPerDish = max;
+        dishNames = null;
+    }
+
+    public void setTransactionMix(double orderShare, double donationShare) {
+        if (orderShare < 0 || donationShare < 0 || orderShare + donationShare > 1) {
+            throw new IllegalArgumentException("transaction shares must be non-negative and add up to at most 1");
+        }
+        this.orderShare = orderShare;
+        this.donationShare = donationShare;
+    }
+
+    private static int atLeastOne(String name, int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1: " + value);
+        }
+        return value;
+    }
+
+    // Ingredient IDs start at 100, as in stock.in
+    public static int ingredientID(int index) {
+        return 100 + index;
+    }
+
+    /*
+     * Model
+     */
+
+    private void build() {
+        if (dishNames != null) {
+            return;
+        }
+        Random random = new Random(seed);
+
+        ingredientNames = new String[ingredients];
+        for (int i = 0; i < ingredients; i++) {
+            ingredientNames[i] = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                    + INGREDIENT_NOUNS[random.nextInt(INGREDIENT_NOUNS.length)] + " " + i;
+        }
+
+        ingredientPopularity = new Zipf(ingredients, zipfExponent, random);
+        dishPopularity = new Zipf(dishes, zipfExponent, random);
+        dishNames = new String[dishes];
+        dishIngredients = new int[dishes][];
+        for (int d = 0; d < dishes; d++) {
+            dishNames[d] = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                    + DISH_NOUNS[random.nextInt(DISH_NOUNS.length)] + " " + d;
+            int count = minIngredientsPerDish + random.nextInt(maxIngredientsPerDish - minIngredientsPerDish + 1);
+            dishIngredients[d] = distinctIngredients(Math.min(count, ingredients), random);
+        }
+    }
+
+    /*
+     * Draws count different ingredients with a partial Fisher-Yates shuffle of the popularity
+     * ranks: step k swaps rank k with rank k + (Zipf draw mod the ranks left) and takes it, so
+     * every step takes a rank not taken before and no draw is ever repeated. The Zipf draw is
+     * mostly small, so popular ranks are still taken far more often than rare ones. Only the
+     * swapped positions are stored, so a dish costs O(count) however many ingredients there are.
+     */
+    private int[] distinctIngredients(int count, Random random) {
+        Map<Integer, Integer> swapped = new HashMap<>();
+        int[] chosen = new int[count];
+        for (int k = 0; k < count; k++) {
+            int j = k + ingredientPopularity.nextRank(random) % (ingredients - k);
+            int rankAtJ = swapped.getOrDefault(j, j);
+            swapped.put(j, swapped.getOrDefault(k, k));
+            chosen[k] = ingredientPopularity.indexOfRank(rankAtJ);
+        }
+        return chosen;
+    }
+
+    /*
+     * Writers
+     */
+
+    public void writeMenu(Path file) throws IOException {
+        build();
+        int categories = (dishes + dishesPerCategory - 1) / dishesPerCategory;
+        try (OutputBuffer out = open(file)) {
+            out.append(categories).newline();
+            for (int c = 0, d = 0; c < categories; c++) {
+                int inCategory = Math.min(dishesPerCategory, dishes - d);
+                out.append("Category ").append(c).newline();
+                out.append(inCategory).newline();
+                for (int j = 0; j < inCategory; j++, d++) {
+                    out.append(dishNames[d]).newline();
+                    out.append(dishIngredients[d].length);
+                    for (int ingredient : dishIngredients[d]) {
+                        out.append(' ').append(ingredientID(ingredient));
+                    }
+                    out.newline();
+                }
+            }
+        }
+    }
+
+    // tableSize is the stock hashtable size on the first line; about one chain per ingredient by default
+    public void writeStock(Path file) throws IOException {
+        writeStock(file, nextPrime(ingredients));
+    }
+
+    public void writeStock(Path file, int tableSize) throws IOException {
+        build();
+        Random random = new Random(seed + 1);
+
+        // Units of each ingredient one order uses on average; orders are for 2.5 dishes on average
+        double[] demand = new double[ingredients];
+        for (int d = 0; d < dishes; d++) {
+            for (int ingredient : dishIngredients[d]) {
+                demand[ingredient] += 2.5 * dishPopularity.probability(d);
+            }
+        }
+
+        try (OutputBuffer out = open(file)) {
+            out.append(tableSize).newline();
+            for (int i = 0; i < ingredients; i++) {
+                long level = 50 + random.nextInt(451) + Math.round(stockedOrders * demand[i] * (0.5 + random.nextDouble()));
+                out.append(ingredientID(i)).append(' ').append(ingredientNames[i]).newline();
+                out.appendCents(0.25 + random.nextInt(1000) / 100.0).append(' ').append(Math.min(level, Integer.MAX_VALUE)).newline();
+            }
+        }
+    }
+
+    public void writeTables(Path file) throws IOException {
+        Random random = new Random(seed + 2);
+        try (OutputBuffer out = open(file)) {
+            out.append(tables).newline();
+            for (int t = 0; t < tables; t++) {
+                // createTables() multiplies the two numbers on each line into the table's seat count
+                out.append(1).append(' ').append(2 + random.nextInt(7)).newline();
+            }
+        }
+    }
+
+    /*
+     * Writes count "type amount item" lines: orders of Zipf-popular dishes, and donations and
+     * restocks of Zipf-popular ingredients, mixed at random in the configured shares.
+     */
+    public void writeTransactions(Path file, int count) throws IOException {
+        build();
+        Random random = new Random(seed + 3);
+        try (OutputBuffer out = open(file)) {
+            out.append(count).newline();
+            for (int i = 0; i < count; i++) {
+                double kind = random.nextDouble();
+                if (kind < orderShare) {
+                    out.append("order ").append(1 + random.nextInt(4)).append(' ')
+                       .append(dishNames[dishPopularity.next(random)]);
+                } else if (kind < orderShare + donationShare) {
+                    out.append("donation ").append(1 + random.nextInt(5)).append(' ')
+                       .append(ingredientNames[ingredientPopularity.next(random)]);
+                } else {
+                    out.append("restock ").append(5 + random.nextInt(46)).append(' ')
+                       .append(ingredientNames[ingredientPopularity.next(random)]);
+                }
+                out.newline();
+            }
+        }
+    }
+
+    // Writes menu.in, stock.in, tables.in and transactions.in into dir
+    public void writeAll(Path dir, int transactions) throws IOException {
+        Files.createDirectories(dir);
+        writeMenu(dir.resolve("menu.in"));
+        writeStock(dir.resolve("stock.in"));
+        writeTables(dir.resolve("tables.in"));
+        writeTransactions(dir.resolve("transactions.in"), transactions);
+    }
+
+    private static OutputBuffer open(Path file) throws IOException {
+        return new OutputBuffer(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    private static int nextPrime(int n) {
+        int candidate = Math.max(2, n);
+        while (!isPrime(candidate)) {
+            candidate++;
+        }
+        return candidate;
+    }
+
+    private static boolean isPrime(int n) {
+        for (int d = 2; (long) d * d <= n; d++) {
+            if (n % d == 0) {
+                return false;
+            }
+        }
+        return n >= 2;
+    }
+
+    /*
+     * Draws indexes 0..n-1 with probability proportional to 1 / rank^exponent, where the
+     * ranks are a random permutation of 1..n fixed when the sampler is made. Sampling is a
+     * binary search over the cumulative distribution.
+     */
+    private static class Zipf {
+        private final double[] cumulative; // cumulative[r] = P(rank <= r + 1)
+        private final int[] indexOfRank;
+        private final int[] rankOfIndex;
+
+        Zipf(int n, double exponent, Random random) {
+            cumulative = new double[n];
+            double total = 0;
+            for (int r = 0; r < n; r++) {
+                total += 1 / Math.pow(r + 1, exponent);
+                cumulative[r] = total;
+            }
+            for (int r = 0; r < n; r++) {
+                cumulative[r] /= total;
+            }
+            cumulative[n - 1] = 1.0;
+
+            indexOfRank = new int[n];
+            for (int i = 0; i < n; i++) {
+                indexOfRank[i] = i;
+            }
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = indexOfRank[i];
+                indexOfRank[i] = indexOfRank[j];
+                indexOfRank[j] = swap;
+            }
+            rankOfIndex = new int[n];
+            for (int r = 0; r < n; r++) {
+                rankOfIndex[indexOfRank[r]] = r;
+            }
+        }
+
+        int next(Random random) {
+            return indexOfRank[nextRank(random)];
+        }
+
+        // 0-based rank: 0 is the most popular
+        int nextRank(Random random) {
+            int r = Arrays.binarySearch(cumulative, random.nextDouble());
+            return r >= 0 ? r : -r - 1;
+        }
+
+        int indexOfRank(int rank) {
+            return indexOfRank[rank];
+        }
+
+        double probability(int index) {
+            int r = rankOfIndex[index];
+            return r == 0 ? cumulative[0] : cumulative[r] - cumulative[r - 1];
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get("generated");
+        long seed = 1;
+        int transactions = 2_000_000;
+        int dishes = 10_000, ingredients = 100_000, tables = 500;
+        double zipf = 1.1;
+        int stockedOrders = 1_000_000;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("expected name=value: " + arg);
+            }
+            switch (pair[0]) {
+                case "dir":          dir = Paths.get(pair[1]); break;
+                case "seed":         seed = Long.parseLong(pair[1]); break;
+                case "dishes":       dishes = Integer.parseInt(pair[1]); break;
+                case "ingredients":  ingredients = Integer.parseInt(pair[1]); break;
+                case "tables":       tables = Integer.parseInt(pair[1]); break;
+                case "transactions": transactions = Integer.parseInt(pair[1]); break;
+                case "zipf":         zipf = Double.parseDouble(pair[1]); break;
+                case "stocked":      stockedOrders = Integer.parseInt(pair[1]); break;
+                default: throw new IllegalArgumentException("unknown setting: " + pair[0]);
+            }
+        }
+        WorkloadGenerator generator = new WorkloadGenerator(seed);
+        generator.setDishes(dishes);
+        generator.setIngredients(ingredients);
+        generator.setTables(tables);
+        generator.setZipfExponent(zipf);
+        generator.setStockedOrders(stockedOrders);
+
+        long start = System.nanoTime();
+        generator.writeAll(dir, transactions);
+        StdOut.printf("Wrote %d dishes, %d ingredients, %d tables and %d transactions to %s in %.2f s\n",
+                dishes, ingredients, tables, transactions, dir, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,125 @@
+package restaurant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This file checks that ShardedRestaurant.updateMenu() cannot deadlock:
+ *  - several threads updating the menu at once, with orders in between, all finish
+ *  - updateMenu() called from a location's worker (inside call()) is turned away instead of
+ *    waiting for its own worker
+ * A deadlock shows up as a timeout, so a failing run ends in seconds rather than hanging; the
+ * chain is only closed after a passing check, since close() would wait for stuck workers.
+ *
+ * Execution (from the project directory, so menu.in and stock.in are found):
+ *   javac -d out src/restaurant/*.java test/restaurant/*.java
+ *   java -cp out restaurant.ShardedRestaurantTest
+ */
+
+public class ShardedRestaurantTest {
+
+    private static final int LOCATIONS = 4;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        concurrentUpdatesFinish();
+        updateFromWorkerIsRejected();
+        StdOut.println("ShardedRestaurantTest: all checks passed");
+    }
+
+    // Threads racing to queue updates used to pause the workers in different orders and wait on each other
+    private static void concurrentUpdatesFinish() throws Exception {
+        ShardedRestaurant chain = open();
+        int threads = 8;
+        int updatesPerThread = 50;
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Void>> updates = new ArrayList<>();
+        List<Thread> updaters = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            double markup = 1.1 + t / 10.0;
+            Thread updater = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int u = 0; u < updatesPerThread; u++) {
+                    CompletableFuture<Void> update = chain.updateMenu(location -> location.setMarkup("Appetizer", markup));
+                    CompletableFuture<Void> order = chain.order(u % LOCATIONS, "Knight Nachos", 1);
+                    synchronized (updates) {
+                        updates.add(update);
+                        updates.add(order);
+                    }
+                }
+            });
+            updater.setDaemon(true);
+            updater.start();
+            updaters.add(updater);
+        }
+        start.countDown();
+        for (Thread updater : updaters) {
+            updater.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            check(!updater.isAlive(), "an updater thread is stuck queueing updates");
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(updates.toArray(new CompletableFuture[0]));
+        try {
+            all.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new AssertionError("concurrent updateMenu() calls deadlocked");
+        }
+        check(updates.size() == 2 * threads * updatesPerThread, "missing updates: " + updates.size());
+        chain.close();
+    }
+
+    // From a worker the update would wait for that same worker to pause, so it must throw instead
+    private static void updateFromWorkerIsRejected() throws Exception {
+        ShardedRestaurant chain = open();
+        for (int locationID = 0; locationID < LOCATIONS; locationID++) {
+            CompletableFuture<String> attempt = chain.call(locationID, location -> {
+                try {
+                    chain.updateMenu(owner -> owner.setMarkup("Appetizer", 1.5));
+                    return "accepted";
+                } catch (IllegalStateException e) {
+                    return "rejected";
+                }
+            });
+            String outcome;
+            try {
+                outcome = attempt.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                throw new AssertionError("updateMenu() on location " + locationID + "'s worker deadlocked");
+            }
+            check(outcome.equals("rejected"), "updateMenu() on location " + locationID + "'s worker was " + outcome);
+        }
+
+        // The workers are still free to take an update from outside
+        try {
+            chain.updateMenu(location -> location.setMarkup("Appetizer", 1.5)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            throw new AssertionError("updateMenu() after the rejected calls failed", e);
+        }
+        double markup = chain.call(0, location -> location.getMarkup("Appetizer")).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        check(markup == 1.5, "markup not updated: " + markup);
+        chain.close();
+    }
+
+    private static ShardedRestaurant open() {
+        String[] stockFiles = new String[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            stockFiles[i] = "stock.in";
+        }
+        return new ShardedRestaurant("menu.in", stockFiles);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}